@@ -2,18 +2,25 @@ package dev.nxtime.hidearmor;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
 import com.hypixel.hytale.server.core.event.events.player.PlayerReadyEvent;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
 import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.event.events.entity.LivingEntityInventoryChangeEvent;
+import com.hypixel.hytale.server.core.modules.entity.component.TransformComponent;
 import com.hypixel.hytale.server.core.modules.entity.tracker.EntityTrackerSystems.EntityViewer;
 import dev.nxtime.hidearmor.commands.HideArmorCommand;
 import dev.nxtime.hidearmor.commands.HideArmorUICommand;
 import dev.nxtime.hidearmor.commands.HideHelmetCommand;
 import dev.nxtime.hidearmor.commands.HideHelmetDebugCommand;
 import dev.nxtime.hidearmor.gui.HideArmorGui;
+import dev.nxtime.hidearmor.net.EquipmentInvalidationQueue;
 import dev.nxtime.hidearmor.net.HideArmorPacketReceiver;
+import dev.nxtime.hidearmor.net.HideArmorTickSystem;
+import dev.nxtime.hidearmor.net.PlayerNetworkRegistry;
+import dev.nxtime.hidearmor.net.RefreshTimerWheel;
+import dev.nxtime.hidearmor.net.ShadowFilter;
 import dev.nxtime.hidearmor.util.PluginLogger;
 
 import com.hypixel.hytale.server.core.universe.world.World;
@@ -25,17 +32,19 @@ import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collections;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
-import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Main plugin class for HideArmor - advanced armor visibility control for
@@ -92,16 +101,6 @@ public class HideArmorPlugin extends JavaPlugin {
     /** Whether unsaved changes exist. */
     private volatile boolean dirty = false;
 
-    /**
-     * Rate limiting for equipment invalidation per player.
-     * Maps player UUID to last invalidation timestamp in milliseconds.
-     */
-    /**
-     * Active scheduled refresh tasks for inventory changes.
-     * Used to throttle refreshes to max 1 per 50ms (1 tick).
-     */
-    private final ConcurrentHashMap<UUID, ScheduledFuture<?>> inventoryRefreshTasks = new ConcurrentHashMap<>();
-
     /**
      * Constructs the plugin instance.
      *
@@ -116,12 +115,27 @@ public class HideArmorPlugin extends JavaPlugin {
         return instance;
     }
 
+    /** Players refreshed between two progress reports of a global refresh. */
+    private static final int REFRESH_PROGRESS_STEP = 16;
+
     /**
-     * Tracked worlds for global equipment refresh. Uses weak references to prevent
-     * memory leaks.
+     * Tracked worlds for global equipment refresh. Copy-on-write snapshot of weak
+     * references, so it can be iterated without a lock and never keeps a world
+     * alive.
      */
-    private final Set<World> trackedWorlds = Collections
-            .synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private volatile List<WeakReference<World>> trackedWorlds = List.of();
+
+    /** Lock for updating {@link #trackedWorlds}. */
+    private final Object trackedWorldsLock = new Object();
+
+    /**
+     * Side of the square columns players are bucketed into when ordering a
+     * refresh, as a shift: 32 blocks, one chunk.
+     */
+    private static final int CROWD_CELL_SHIFT = 5;
+
+    /** Progress of the latest global refresh, or null if none was started. */
+    private volatile RefreshProgress latestRefresh;
 
     /**
      * Registers a world for tracking (called during player join events).
@@ -129,41 +143,412 @@ public class HideArmorPlugin extends JavaPlugin {
      * @param world the world to track
      */
     public void trackWorld(World world) {
-        if (world != null) {
-            trackedWorlds.add(world);
+        if (world == null)
+            return;
+        for (var ref : trackedWorlds) {
+            if (ref.get() == world)
+                return; // Already tracked; the common case needs no lock
+        }
+
+        synchronized (trackedWorldsLock) {
+            List<WeakReference<World>> next = new ArrayList<>(trackedWorlds.size() + 1);
+            for (var ref : trackedWorlds) {
+                World tracked = ref.get();
+                if (tracked == world)
+                    return;
+                if (tracked != null)
+                    next.add(ref); // Drop unloaded worlds
+            }
+            next.add(new WeakReference<>(world));
+            trackedWorlds = List.copyOf(next);
         }
     }
 
     /**
      * Refreshes equipment visibility for all online players in tracked worlds.
-     * <p>
-     * Call this when global settings (like forcedMask) change to immediately
-     * apply the new visibility rules to all players without requiring rejoin.
+     *
+     * @see #refreshAllPlayersEquipment(Runnable)
      */
     public void refreshAllPlayersEquipment() {
-        for (var world : trackedWorlds) {
+        refreshAllPlayersEquipment(null);
+    }
+
+    /**
+     * Refreshes equipment visibility for all online players in tracked worlds.
+     * <p>
+     * Call this when global settings (like forcedMask) change to apply the new
+     * visibility rules to all players without requiring rejoin. Packet wrappers
+     * are installed or removed first, as the change may alter who needs one.
+     * <p>
+     * Each world's players are queued on its {@link EquipmentInvalidationQueue}
+     * at once, and the queue's per-tick budget paces the rebroadcasts, so a full
+     * server does not rebroadcast every player's equipment in the same tick.
+     * Players in the most crowded chunk columns are queued first, as their
+     * change is the one most likely to be seen; players alone go last.
+     * <p>
+     * Every call tracks its own {@link RefreshProgress}, so a refresh started
+     * while another is running never resets or inflates the other's counts.
+     * Progress advances as the queue actually rebroadcasts (or drops) each
+     * player, not when they are queued.
+     *
+     * @param onProgress called every {@value #REFRESH_PROGRESS_STEP} refreshed
+     *                   players and when the count catches up with the total
+     *                   (usually on a world thread), or null
+     */
+    public void refreshAllPlayersEquipment(Runnable onProgress) {
+        RefreshProgress progress = new RefreshProgress();
+        latestRefresh = progress;
+
+        for (var ref : trackedWorlds) {
+            World world = ref.get();
             if (world == null)
                 continue;
 
-            world.execute(() -> {
-                try {
-                    for (var player : world.getPlayers()) {
-                        if (player == null)
-                            continue;
-                        try {
-                            player.invalidateEquipmentNetwork();
-                        } catch (Throwable ignored) {
-                            // Player might have disconnected
+            progress.activeWorlds.incrementAndGet();
+            try {
+                world.execute(() -> {
+                    try {
+                        List<Player> players = orderByCrowding(world);
+                        progress.total.addAndGet(players.size());
+                        Runnable onHandled = () -> progress.advance(onProgress);
+                        for (Player player : players) {
+                            syncPacketReceiver(player, world);
+                            EquipmentInvalidationQueue.request(player, onHandled);
                         }
+                    } catch (Throwable t) {
+                        PluginLogger.debug("Failed to refresh in world: " + t.getMessage());
+                    } finally {
+                        progress.activeWorlds.decrementAndGet();
                     }
-                } catch (Throwable t) {
-                    PluginLogger.debug("Failed to refresh in world: " + t.getMessage());
-                }
-            });
+                });
+            } catch (Throwable t) {
+                progress.activeWorlds.decrementAndGet();
+                PluginLogger.debug("Failed to refresh in world: " + t.getMessage());
+            }
         }
         PluginLogger.debug("Triggered equipment refresh for all players.");
     }
 
+    /**
+     * @return the progress of the latest global refresh, or null if none was
+     *         started
+     */
+    public RefreshProgress getLatestRefresh() {
+        return latestRefresh;
+    }
+
+    /**
+     * Lists a world's players, most crowded first.
+     * <p>
+     * Players are bucketed by the 32-block column they stand in, and ordered by
+     * how many players share their column: a linear pass plus a sort, instead of
+     * comparing every pair. Players whose position is unknown go last. Must run
+     * on the world thread.
+     *
+     * @param world the world
+     * @return the players in refresh order
+     */
+    private static List<Player> orderByCrowding(World world) {
+        var store = world.getEntityStore().getStore();
+        List<Player> players = new ArrayList<>();
+        for (var player : world.getPlayers()) {
+            if (player != null)
+                players.add(player);
+        }
+
+        int n = players.size();
+        long[] cell = new long[n];
+        boolean[] located = new boolean[n];
+        Map<Long, Integer> occupancy = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            try {
+                TransformComponent transform = store.getComponent(players.get(i).getReference(),
+                        TransformComponent.getComponentType());
+                if (transform != null && transform.getPosition() != null) {
+                    long cx = (int) Math.floor(transform.getPosition().getX()) >> CROWD_CELL_SHIFT;
+                    long cz = (int) Math.floor(transform.getPosition().getZ()) >> CROWD_CELL_SHIFT;
+                    cell[i] = (cx << 32) | (cz & 0xFFFFFFFFL);
+                    located[i] = true;
+                    occupancy.merge(cell[i], 1, Integer::sum);
+                }
+            } catch (Throwable ignored) {
+                // Unknown position: refreshed last
+            }
+        }
+
+        int[] crowd = new int[n];
+        for (int i = 0; i < n; i++) {
+            crowd[i] = located[i] ? occupancy.get(cell[i]) : 0;
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> -crowd[i]));
+
+        List<Player> ordered = new ArrayList<>(n);
+        for (int i : order) {
+            ordered.add(players.get(i));
+        }
+        return ordered;
+    }
+
+    /**
+     * Progress of one global refresh, summed over its worlds.
+     * <p>
+     * <b>Thread-safety:</b> Counters are atomic; worlds queue players and the
+     * invalidation queues report them from their own threads.
+     */
+    public static final class RefreshProgress {
+        /** Players queued, across all worlds. */
+        private final AtomicInteger total = new AtomicInteger();
+
+        /** Players already rebroadcast (or dropped because they left). */
+        private final AtomicInteger done = new AtomicInteger();
+
+        /** Worlds that have not queued their players yet. */
+        private final AtomicInteger activeWorlds = new AtomicInteger();
+
+        private RefreshProgress() {
+        }
+
+        /**
+         * Counts one handled player and reports every
+         * {@value HideArmorPlugin#REFRESH_PROGRESS_STEP} players and on completion.
+         */
+        private void advance(Runnable onProgress) {
+            int now = done.incrementAndGet();
+            if (onProgress == null || (now % REFRESH_PROGRESS_STEP != 0 && now < total.get()))
+                return;
+            try {
+                onProgress.run();
+            } catch (Throwable ignored) {
+                // Progress listener (e.g. a closed page) must not stop the refresh
+            }
+        }
+
+        /**
+         * @return the number of players refreshed so far
+         */
+        public int getDone() {
+            return done.get();
+        }
+
+        /**
+         * @return the number of players queued so far
+         */
+        public int getTotal() {
+            return total.get();
+        }
+
+        /**
+         * @return whether some world has not queued its players yet or some queued
+         *         player has not been refreshed
+         */
+        public boolean isRunning() {
+            return activeWorlds.get() > 0 || done.get() < total.get();
+        }
+    }
+
+    /**
+     * Installs or removes the packet wrapper on a player's {@code EntityViewer} so
+     * that it is present exactly when the player's effective mask needs it.
+     * <p>
+     * Players who hide nothing (no self or hide-others bits, counting the forced
+     * mask) keep the server's original packet receiver and pay nothing per
+     * packet. Must run on the world thread.
+     *
+     * @param player the player whose receiver to update
+     * @param world  the player's world
+     */
+    public void syncPacketReceiver(Player player, World world) {
+        try {
+            // Get the EntityViewer component from the entity store and wrap its packet
+            // receiver
+            // This allows us to intercept outgoing packets to hide armor visually
+            var store = world.getEntityStore().getStore();
+            var ref = player.getReference();
+
+            EntityViewer viewer = store.getComponent(ref, EntityViewer.getComponentType());
+            if (viewer == null || viewer.packetReceiver == null)
+                return;
+
+            boolean required = HideArmorPacketReceiver.isRequiredFor(HideArmorState.getMask(player.getUuid()));
+            if (required) {
+                // Prevent double-wrapping the packet receiver to avoid performance issues
+                if (!(viewer.packetReceiver instanceof HideArmorPacketReceiver)) {
+                    viewer.packetReceiver = new HideArmorPacketReceiver(
+                            viewer.packetReceiver,
+                            player.getUuid(),
+                            player.getNetworkId(),
+                            PlayerNetworkRegistry.forWorld(world));
+                }
+            } else if (viewer.packetReceiver instanceof HideArmorPacketReceiver wrapper) {
+                // Only unwrap our own outermost wrapper; anything layered on top is left alone
+                viewer.packetReceiver = wrapper.getDelegate();
+            }
+        } catch (Throwable t) {
+            // Catch all exceptions to prevent server crashes if SDK internals change in
+            // future updates
+        }
+    }
+
+    /**
+     * Plans and applies the refresh for a change of one player's effective mask
+     * on the world thread, scoped by the bits that flipped:
+     * <ul>
+     * <li>Self bits (0-3): only the player's own view of their equipment</li>
+     * <li>Hide-others bits (4-7): only the toggling viewer's view of others</li>
+     * <li>Allow-others bits (8-11): only viewers whose hide-others bits match a
+     * changed slot</li>
+     * </ul>
+     * Resyncs only use equipment a viewer's own packet wrapper has passed on, so
+     * they never send anything older than what that client already shows. A
+     * player whose equipment a wrapper has not seen is only re-sent through the
+     * queue while that wrapper's view is incomplete (see
+     * {@link HideArmorPacketReceiver#isViewComplete()}). A wrapper installed by
+     * this very change has seen nothing, so the player's own equipment goes
+     * straight to invalidation and their view is rebuilt. The packet wrapper
+     * is installed before and removed after the resync, so the resync always
+     * goes through it.
+     *
+     * @param player  the player whose mask changed
+     * @param world   the player's world
+     * @param oldMask the previous effective mask
+     * @param newMask the new effective mask
+     */
+    private void applyMaskChange(Player player, World world, int oldMask, int newMask) {
+        boolean wasRequired = HideArmorPacketReceiver.isRequiredFor(oldMask);
+        boolean required = HideArmorPacketReceiver.isRequiredFor(newMask);
+        boolean installed = required && !wasRequired;
+        if (installed)
+            syncPacketReceiver(player, world);
+
+        int changed = oldMask ^ newMask;
+        if ((changed & 0xF) != 0) {
+            if (installed) {
+                EquipmentInvalidationQueue.request(player);
+            } else {
+                resyncSelf(player, world);
+            }
+        }
+        int changedHide = (changed >>> HideArmorState.SLOT_HIDE_OTHERS_HEAD) & 0xF;
+        if (changedHide != 0)
+            resyncViewer(player, world, changedHide);
+        int changedAllow = (changed >>> HideArmorState.SLOT_ALLOW_OTHERS_HEAD) & 0xF;
+        if (changedAllow != 0)
+            resyncTargetViewers(player, world, changedAllow);
+
+        if (wasRequired && !required)
+            syncPacketReceiver(player, world);
+    }
+
+    /**
+     * Re-sends a player's own equipment to them after their self bits changed.
+     * Falls back to invalidating the player if their wrapper has not seen their
+     * equipment.
+     *
+     * @param player the player
+     * @param world  the player's world
+     */
+    private void resyncSelf(Player player, World world) {
+        HideArmorPacketReceiver receiver = findPacketReceiver(player, world);
+        if (receiver == null || !receiver.resyncSelf())
+            EquipmentInvalidationQueue.request(player);
+    }
+
+    /**
+     * Re-sends other players' equipment to one viewer after their hide-others
+     * bits changed.
+     * <p>
+     * Only players whose allow-others bits overlap the changed slots look
+     * different now. They are re-sent through the viewer's packet wrapper from
+     * the equipment it has seen itself, so nothing is rebroadcast. Players the
+     * wrapper has not seen are skipped once its view is complete, as they are not
+     * spawned on the viewer's client and will arrive with filtered equipment.
+     * Otherwise some of them may have spawned before the wrapper was installed,
+     * and the wrapper's view is rebuilt once.
+     *
+     * @param viewer      the viewer
+     * @param world       the viewer's world
+     * @param changedHide the hide-others slots that changed (4-bit)
+     */
+    private void resyncViewer(Player viewer, World world, int changedHide) {
+        List<Player> targets = new ArrayList<>();
+        PlayerNetworkRegistry.forWorld(world).forEachPlayer(target -> {
+            if (target != viewer
+                    && ((HideArmorState.getMask(target.getUuid()) >>> HideArmorState.SLOT_ALLOW_OTHERS_HEAD)
+                            & changedHide) != 0)
+                targets.add(target);
+        });
+        if (targets.isEmpty())
+            return;
+
+        HideArmorPacketReceiver receiver = findPacketReceiver(viewer, world);
+        if (receiver == null) {
+            targets.forEach(EquipmentInvalidationQueue::request);
+            return;
+        }
+
+        int[] networkIds = new int[targets.size()];
+        for (int i = 0; i < networkIds.length; i++) {
+            networkIds[i] = targets.get(i).getNetworkId();
+        }
+        if (receiver.resyncTargets(networkIds).length != 0 && !receiver.isViewComplete())
+            receiver.rebuildView();
+    }
+
+    /**
+     * Re-sends one player's equipment to the viewers affected by a change of that
+     * player's allow-others bits: those who hide at least one changed slot.
+     * <p>
+     * Falls back to invalidating the player if any of those viewers has no
+     * wrapper, or may have the player spawned without a record of their
+     * equipment: the wrapper has not seen it and its view is incomplete. A
+     * complete wrapper that has not seen the player does not have them spawned,
+     * so it needs nothing.
+     *
+     * @param target       the player whose allow-others bits changed
+     * @param world        the player's world
+     * @param changedAllow the allow-others slots that changed (4-bit)
+     */
+    private void resyncTargetViewers(Player target, World world, int changedAllow) {
+        int[] targetNetworkId = { target.getNetworkId() };
+        boolean[] fallback = { false };
+        PlayerNetworkRegistry.forWorld(world).forEachPlayer(viewer -> {
+            if (viewer == target
+                    || ((HideArmorState.getMask(viewer.getUuid()) >>> HideArmorState.SLOT_HIDE_OTHERS_HEAD)
+                            & changedAllow) == 0)
+                return;
+            HideArmorPacketReceiver receiver = findPacketReceiver(viewer, world);
+            if (receiver == null
+                    || (receiver.resyncTargets(targetNetworkId).length != 0 && !receiver.isViewComplete()))
+                fallback[0] = true;
+        });
+        if (fallback[0])
+            EquipmentInvalidationQueue.request(target);
+    }
+
+    /**
+     * Returns a player's packet wrapper, if installed. Must run on the world
+     * thread.
+     *
+     * @param player the player
+     * @param world  the player's world
+     * @return the wrapper, or null
+     */
+    private static HideArmorPacketReceiver findPacketReceiver(Player player, World world) {
+        try {
+            var store = world.getEntityStore().getStore();
+            EntityViewer viewer = store.getComponent(player.getReference(), EntityViewer.getComponentType());
+            return viewer != null && viewer.packetReceiver instanceof HideArmorPacketReceiver receiver ? receiver
+                    : null;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
     /**
      * Sets up the plugin during server startup.
      * <p>
@@ -174,6 +559,8 @@ public class HideArmorPlugin extends JavaPlugin {
      * <li>Load saved player settings from disk</li>
      * <li>Register onChange callback for auto-save</li>
      * <li>Register commands</li>
+     * <li>Register the per-tick system (refresh timers, equipment rebroadcast
+     * queue)</li>
      * <li>Install packet receivers for all players</li>
      * <li>Hook inventory change events for armor refresh</li>
      * </ol>
@@ -207,6 +594,10 @@ public class HideArmorPlugin extends JavaPlugin {
         this.getCommandRegistry().registerCommand(
                 new HideArmorAdminCommand("hidearmoradmin", "Admin configuration menu"));
 
+        // Fires due refresh timers and flushes queued equipment rebroadcasts once per
+        // world tick
+        this.getEntityStoreRegistry().registerSystem(new HideArmorTickSystem());
+
         // Test mode for single-player testing (disabled in production)
         // Uncomment to enable: /hidearmor test enable/disable/status/simulate
         // this.getCommandRegistry().registerCommand(
@@ -222,46 +613,45 @@ public class HideArmorPlugin extends JavaPlugin {
             // Track this world for global equipment refresh
             trackWorld(world);
 
-            world.execute(() -> {
-                try {
-                    // Get the EntityViewer component from the entity store and wrap its packet
-                    // receiver
-                    // This allows us to intercept outgoing packets to hide armor visually
-                    var store = world.getEntityStore().getStore();
-                    var ref = player.getReference();
-
-                    EntityViewer viewer = store.getComponent(ref, EntityViewer.getComponentType());
-                    if (viewer == null || viewer.packetReceiver == null)
-                        return;
-
-                    // Prevent double-wrapping the packet receiver to avoid performance issues
-                    if (!(viewer.packetReceiver instanceof HideArmorPacketReceiver)) {
-                        viewer.packetReceiver = new HideArmorPacketReceiver(
-                                viewer.packetReceiver,
-                                player.getUuid(),
-                                player.getNetworkId(),
-                                world);
-                    }
+            // Register in the world's network ID registry before any viewer can receive
+            // this player's entity
+            PlayerNetworkRegistry players = PlayerNetworkRegistry.forWorld(world);
+            players.register(player);
 
-                    if (HideArmorState.getMask(player.getUuid()) != 0) {
-                        try {
-                            player.invalidateEquipmentNetwork();
-                        } catch (Throwable ignored) {
-                        }
-                    }
+            world.execute(() -> {
+                // Only players who actually hide something get a wrapper; everyone else's
+                // packets never pass through the plugin
+                syncPacketReceiver(player, world);
 
-                } catch (Throwable t) {
-                    // Catch all exceptions to prevent server crashes if SDK internals change in
-                    // future updates
-                }
+                if (HideArmorState.getMask(player.getUuid()) != 0)
+                    EquipmentInvalidationQueue.request(player);
             });
         });
 
+        // Install or remove the wrapper when a player's own settings start or stop
+        // needing it (global default/forced changes go through refreshAllPlayersEquipment)
+        HideArmorState.setOnMaskChange((uuid, oldMask, newMask) -> {
+            Player player = PlayerNetworkRegistry.findPlayer(uuid);
+            if (player == null)
+                return;
+            World world = player.getWorld();
+            if (world == null)
+                return;
+            world.execute(() -> applyMaskChange(player, world, oldMask, newMask));
+        });
+
+        // Keep the network ID registries in sync with disconnects (world transfers are
+        // handled by the next PlayerReadyEvent re-registering the player)
+        this.getEventRegistry().registerGlobal(PlayerDisconnectEvent.class, (event) -> {
+            UUID uuid = event.getPlayerRef().getUuid();
+            PlayerNetworkRegistry.unregisterEverywhere(uuid); // Also drops pending refreshes
+        });
+
         // Fail-safe mechanism: Ensure armor hiding persists after inventory changes
         // (because client-side Inventory updates can override visual state).
-        // Uses a Throttled Fixed Delay strategy:
-        // - Schedules a refresh for 50ms (1 tick) later.
-        // - If a refresh is already pending/running, doesn't schedule another.
+        // Uses a Throttled Fixed Delay strategy on the world's timer wheel:
+        // - Arms a refresh refreshDelayMs (default 1 tick) later.
+        // - If a refresh is already armed, doesn't arm another.
         // This ensures the refresh happens AFTER the event (resolving race conditions)
         // while preventing server overload during rapid inventory changes (vacuuming).
         this.getEventRegistry().registerGlobal(LivingEntityInventoryChangeEvent.class, (event) -> {
@@ -275,26 +665,7 @@ public class HideArmorPlugin extends JavaPlugin {
             if (mask == 0 && forcedMask == 0)
                 return;
 
-            UUID uuid = player.getUuid();
-            var world = player.getWorld();
-            if (world == null)
-                return;
-
-            // Check if a refresh task is already pending or running
-            java.util.concurrent.ScheduledFuture<?> task = inventoryRefreshTasks.get(uuid);
-            if (task == null || task.isDone()) {
-                // Schedule a new refresh for 50ms later (1 tick)
-                // This delay ensures our "Fix" packet arrives AFTER the natural "Bad" packet
-                task = saveExecutor.schedule(() -> {
-                    world.execute(() -> {
-                        try {
-                            player.invalidateEquipmentNetwork();
-                        } catch (Throwable ignored) {
-                        }
-                    });
-                }, HideArmorState.getRefreshDelayMs(), TimeUnit.MILLISECONDS);
-                inventoryRefreshTasks.put(uuid, task);
-            }
+            RefreshTimerWheel.schedule(player, HideArmorState.getRefreshDelayMs());
         });
 
     }
@@ -303,7 +674,7 @@ public class HideArmorPlugin extends JavaPlugin {
      * Cleans up resources during server shutdown.
      * <p>
      * Performs a final save of all player settings and shuts down the save
-     * executor.
+     * executor and the shadow filter thread.
      */
     @Override
     protected void shutdown() {
@@ -312,6 +683,7 @@ public class HideArmorPlugin extends JavaPlugin {
         if (saveExecutor != null) {
             saveExecutor.shutdownNow();
         }
+        ShadowFilter.shutdown();
     }
 
     /**
@@ -377,6 +749,10 @@ public class HideArmorPlugin extends JavaPlugin {
     /**
      * Reloads the configuration and player states from disk.
      * This overrides any in-memory changes that haven't been saved yet.
+     * <p>
+     * Masks are loaded silently, so no per-player change handling runs. A
+     * global refresh follows, which installs or removes packet wrappers for the
+     * reloaded masks and rebroadcasts everyone's equipment.
      */
     public void reloadConfiguration() {
         if (loadStateFromDisk() > 0) {
@@ -384,6 +760,7 @@ public class HideArmorPlugin extends JavaPlugin {
         } else {
             PluginLogger.error("Failed to reload configuration or file is empty.");
         }
+        refreshAllPlayersEquipment();
     }
 
     private int loadStateFromDisk() {
@@ -432,6 +809,9 @@ public class HideArmorPlugin extends JavaPlugin {
                 HideArmorState.setDefaultMask(model.config.defaultMask);
                 HideArmorState.setForcedMask(model.config.forcedMask);
                 HideArmorState.setRefreshDelayMs(model.config.refreshDelayMs);
+                HideArmorState.setFilterBudgetMicros(model.config.filterBudgetMicros);
+                HideArmorState.setShadowSampleRate(model.config.shadowSampleRate);
+                HideArmorState.setInvalidationsPerTick(model.config.invalidationsPerTick);
                 if (model.config.defaultLanguage != null) {
                     HideArmorState.setDefaultLanguage(model.config.defaultLanguage);
                 }
@@ -494,6 +874,9 @@ public class HideArmorPlugin extends JavaPlugin {
             model.config.defaultMask = HideArmorState.getDefaultMask();
             model.config.forcedMask = HideArmorState.getForcedMask();
             model.config.refreshDelayMs = HideArmorState.getRefreshDelayMs();
+            model.config.filterBudgetMicros = HideArmorState.getFilterBudgetMicros();
+            model.config.shadowSampleRate = HideArmorState.getShadowSampleRate();
+            model.config.invalidationsPerTick = HideArmorState.getInvalidationsPerTick();
             model.config.defaultLanguage = HideArmorState.getDefaultLanguage();
 
             String json = gson.toJson(model);
@@ -532,6 +915,12 @@ public class HideArmorPlugin extends JavaPlugin {
         int forcedMask = 0;
         /** Refresh delay in milliseconds for inventory change events. */
         int refreshDelayMs = 50;
+        /** Average filter time per packet (microseconds) before degrading; 0 = off. */
+        int filterBudgetMicros = 500;
+        /** Shadow mode: re-check one in N filtered packets; 0 = off. */
+        int shadowSampleRate = 0;
+        /** Equipment rebroadcasts per world per tick; the rest wait for later ticks. */
+        int invalidationsPerTick = 64;
         /** Default language for new players. */
         String defaultLanguage = "en_us";
     }
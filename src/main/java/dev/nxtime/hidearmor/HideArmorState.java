@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Centralized state management for armor visibility settings.
@@ -56,9 +57,14 @@ public final class HideArmorState {
     private static final ConcurrentHashMap<UUID, Integer> MASKS = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<UUID, String> LANGUAGES = new ConcurrentHashMap<>();
     private static volatile Runnable onChange;
+    private static volatile MaskChangeListener onMaskChange;
     private static volatile int defaultMask = 0;
     private static volatile int forcedMask = 0;
+    private static final AtomicInteger MASK_VERSION = new AtomicInteger(); // Bumped on any mask change
     private static volatile int refreshDelayMs = 50; // Default 50ms (1 tick)
+    private static volatile int filterBudgetMicros = 500; // Average per filtered packet, 0 = off
+    private static volatile int shadowSampleRate = 0; // One in N packets re-checked, 0 = off
+    private static volatile int invalidationsPerTick = 64; // Equipment rebroadcasts per world per tick
     private static volatile String defaultLanguage = "en_us"; // Default language for new players
 
     /**
@@ -81,6 +87,19 @@ public final class HideArmorState {
         onChange = callback;
     }
 
+    /**
+     * Sets the listener notified when a single player's effective mask changes.
+     * <p>
+     * Unlike {@link #setOnChange}, this receives the player and the old and new
+     * effective masks, so callers can react to exactly the bits that flipped. It
+     * is not invoked for silent loads or for global default/forced mask changes.
+     *
+     * @param listener the listener, or null to clear
+     */
+    public static void setOnMaskChange(MaskChangeListener listener) {
+        onMaskChange = listener;
+    }
+
     /**
      * Retrieves the global default mask applied to users with no explicit settings.
      *
@@ -99,6 +118,7 @@ public final class HideArmorState {
         int clamped = Math.max(0, Math.min(4095, mask));
         if (defaultMask != clamped) {
             defaultMask = clamped;
+            MASK_VERSION.incrementAndGet();
             Runnable callback = onChange;
             if (callback != null)
                 callback.run();
@@ -125,6 +145,7 @@ public final class HideArmorState {
         int clamped = Math.max(0, Math.min(4095, mask));
         if (forcedMask != clamped) {
             forcedMask = clamped;
+            MASK_VERSION.incrementAndGet();
             Runnable callback = onChange;
             if (callback != null)
                 callback.run();
@@ -156,6 +177,89 @@ public final class HideArmorState {
         }
     }
 
+    /**
+     * Retrieves the per-packet filter time budget in microseconds.
+     * <p>
+     * If a viewer's average filter time exceeds this budget, their receiver
+     * temporarily falls back to self-only filtering.
+     *
+     * @return the budget in microseconds, or 0 if the circuit breaker is off
+     */
+    public static int getFilterBudgetMicros() {
+        return filterBudgetMicros;
+    }
+
+    /**
+     * Sets the per-packet filter time budget and triggers persistence.
+     *
+     * @param budgetMicros the new budget (clamped to 0-100000 microseconds, 0
+     *                     disables the circuit breaker)
+     */
+    public static void setFilterBudgetMicros(int budgetMicros) {
+        int clamped = Math.max(0, Math.min(100_000, budgetMicros));
+        if (filterBudgetMicros != clamped) {
+            filterBudgetMicros = clamped;
+            Runnable callback = onChange;
+            if (callback != null)
+                callback.run();
+        }
+    }
+
+    /**
+     * Retrieves the equipment rebroadcast budget per world tick.
+     * <p>
+     * Queued rebroadcasts beyond this budget wait for the following ticks.
+     *
+     * @return the maximum number of players rebroadcast per world per tick
+     */
+    public static int getInvalidationsPerTick() {
+        return invalidationsPerTick;
+    }
+
+    /**
+     * Sets the equipment rebroadcast budget per world tick and triggers
+     * persistence.
+     *
+     * @param perTick the new budget (clamped to 1-1024 players)
+     */
+    public static void setInvalidationsPerTick(int perTick) {
+        int clamped = Math.max(1, Math.min(1024, perTick));
+        if (invalidationsPerTick != clamped) {
+            invalidationsPerTick = clamped;
+            Runnable callback = onChange;
+            if (callback != null)
+                callback.run();
+        }
+    }
+
+    /**
+     * Retrieves the shadow mode sample rate.
+     * <p>
+     * One in this many filtered packets is re-checked against the reference
+     * filter on a background thread.
+     *
+     * @return the sample rate, or 0 if shadow mode is off
+     */
+    public static int getShadowSampleRate() {
+        return shadowSampleRate;
+    }
+
+    /**
+     * Sets the shadow mode sample rate and triggers persistence.
+     *
+     * @param rate one in {@code rate} packets is sampled (clamped to 0-1000000,
+     *             0 disables shadow mode)
+     */
+    public static void setShadowSampleRate(int rate) {
+        int clamped = Math.max(0, Math.min(1_000_000, rate));
+        if (shadowSampleRate != clamped) {
+            shadowSampleRate = clamped;
+            Runnable callback = onChange;
+            if (callback != null)
+                callback.run();
+        }
+    }
+
     /**
      * Retrieves the full 12-bit mask for a player.
      * <p>
@@ -171,6 +275,19 @@ public final class HideArmorState {
         return base | forcedMask;
     }
 
+    /**
+     * Returns a counter that changes whenever any player's mask, the default mask
+     * or the forced mask changes.
+     * <p>
+     * Results derived from several players' masks (such as shared broadcast
+     * variants) record it and are rebuilt once it moves on.
+     *
+     * @return the current mask version
+     */
+    public static int getMaskVersion() {
+        return MASK_VERSION.get();
+    }
+
     /**
      * Sets the full 12-bit mask for a player and triggers the onChange callback.
      *
@@ -293,16 +410,23 @@ public final class HideArmorState {
      */
     private static void setMaskInternal(UUID uuid, int mask, boolean notify) {
         int clamped = Math.max(0, Math.min(4095, mask)); // 12 bits: 2^12 - 1
+        int oldMask = notify ? getMask(uuid) : 0;
         if (clamped == 0) {
             MASKS.remove(uuid);
         } else {
             MASKS.put(uuid, clamped);
         }
+        MASK_VERSION.incrementAndGet();
 
         if (notify) {
             Runnable callback = onChange;
             if (callback != null)
                 callback.run();
+
+            MaskChangeListener listener = onMaskChange;
+            int newMask = getMask(uuid);
+            if (listener != null && newMask != oldMask)
+                listener.onMaskChange(uuid, oldMask, newMask);
         }
     }
 
@@ -365,6 +489,35 @@ public final class HideArmorState {
                 isAllowOthersEnabled(targetUuid, armorSlot);
     }
 
+    /**
+     * Computes the 4-bit self-armor hide pattern from a full mask.
+     * <p>
+     * Bit N of the result corresponds to armor slot N (0 = head ... 3 = legs).
+     *
+     * @param mask the viewer's effective 12-bit mask
+     * @return the self-armor bits (0-3) as a 4-bit pattern
+     */
+    public static int selfHidePattern(int mask) {
+        return mask & 0xF;
+    }
+
+    /**
+     * Computes the 4-bit pattern of slots a viewer hides on a target (mutual
+     * opt-in).
+     * <p>
+     * Equivalent to calling {@link #shouldHideOtherPlayerArmor} for each slot, but
+     * resolved with a single AND of the viewer's hide-others bits (4-7) and the
+     * target's allow-others bits (8-11). Bit N of the result corresponds to armor
+     * slot N.
+     *
+     * @param viewerMask the viewer's effective 12-bit mask
+     * @param targetMask the target's effective 12-bit mask
+     * @return the slots to hide as a 4-bit pattern
+     */
+    public static int othersHidePattern(int viewerMask, int targetMask) {
+        return (viewerMask >>> SLOT_HIDE_OTHERS_HEAD) & (targetMask >>> SLOT_ALLOW_OTHERS_HEAD) & 0xF;
+    }
+
     /**
      * Toggle hide-others setting for a specific armor slot
      * 
@@ -474,4 +627,19 @@ public final class HideArmorState {
                 callback.run();
         }
     }
+
+    /**
+     * Listener for changes to a single player's effective mask.
+     */
+    @FunctionalInterface
+    public interface MaskChangeListener {
+        /**
+         * Called after a player's effective mask changed.
+         *
+         * @param uuid    the player's UUID
+         * @param oldMask the effective mask before the change
+         * @param newMask the effective mask after the change
+         */
+        void onMaskChange(UUID uuid, int oldMask, int newMask);
+    }
 }
@@ -113,7 +113,6 @@ public class HideArmorCommand extends AbstractPlayerCommand {
             player.sendMessage(Message.join(
                     Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
                     Message.raw(formatMask(player, newMask)).color(ColorConfig.TEXT)));
-            forceRefresh(player);
             return;
         }
 
@@ -130,7 +129,6 @@ public class HideArmorCommand extends AbstractPlayerCommand {
                 player.sendMessage(Message.join(
                         Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
                         Message.raw(formatMask(player, newMask)).color(ColorConfig.TEXT)));
-                forceRefresh(player);
                 return;
             }
 
@@ -147,7 +145,6 @@ public class HideArmorCommand extends AbstractPlayerCommand {
             player.sendMessage(Message.join(
                     Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
                     Message.raw(formatMask(player, newMask)).color(ColorConfig.TEXT)));
-            forceRefresh(player);
             return;
         }
 
@@ -157,7 +154,6 @@ public class HideArmorCommand extends AbstractPlayerCommand {
             player.sendMessage(Message.join(
                     Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
                     Message.raw(formatMask(player, newMask)).color(ColorConfig.TEXT)));
-            forceRefresh(player);
             return;
         }
 
@@ -260,7 +256,6 @@ public class HideArmorCommand extends AbstractPlayerCommand {
                     Message.raw(hideAll ? TranslationManager.get(player, "common.all")
                             : TranslationManager.get(player, "common.none"))
                             .color(hideAll ? ColorConfig.ERROR : ColorConfig.SUCCESS)));
-            forceRefresh(player);
             return;
         }
 
@@ -278,7 +273,6 @@ public class HideArmorCommand extends AbstractPlayerCommand {
                 Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
                 Message.raw(TranslationManager.get(player, "status.hide_others_armor")).color(ColorConfig.TEXT),
                 Message.raw(hideOthers).color(ColorConfig.HIGHLIGHT)));
-        forceRefresh(player);
     }
 
     private void handleAllowOthers(Player player, String[] args) {
@@ -299,7 +293,6 @@ public class HideArmorCommand extends AbstractPlayerCommand {
                     Message.raw(allowAll ? TranslationManager.get(player, "common.all")
                             : TranslationManager.get(player, "common.none"))
                             .color(allowAll ? ColorConfig.SUCCESS : ColorConfig.ERROR)));
-            forceRefresh(player);
             return;
         }
 
@@ -317,7 +310,6 @@ public class HideArmorCommand extends AbstractPlayerCommand {
                 Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
                 Message.raw(TranslationManager.get(player, "status.allow_others")).color(ColorConfig.TEXT),
                 Message.raw(allowOthers).color(ColorConfig.HIGHLIGHT)));
-        forceRefresh(player);
     }
 
     private void openGui(Player player) {
@@ -338,17 +330,4 @@ public class HideArmorCommand extends AbstractPlayerCommand {
             });
         }
     }
-
-    private void forceRefresh(Player player) {
-        var world = player.getWorld();
-        if (world == null)
-            return;
-
-        world.execute(() -> {
-            try {
-                player.invalidateEquipmentNetwork();
-            } catch (Throwable ignored) {
-            }
-        });
-    }
 }
@@ -42,20 +42,5 @@ public class HideHelmetCommand extends AbstractPlayerCommand {
                 Message.raw(TranslationManager.get(player, "armor.head") + ": ").color(ColorConfig.TEXT),
                 Message.raw(TranslationManager.get(player, enabled ? "status.visible" : "status.hidden"))
                         .color(enabled ? ColorConfig.SUCCESS : ColorConfig.ERROR)));
-
-        forceRefresh(player);
-    }
-
-    private void forceRefresh(Player player) {
-        var world = player.getWorld();
-        if (world == null)
-            return;
-
-        world.execute(() -> {
-            try {
-                player.invalidateEquipmentNetwork();
-            } catch (Throwable ignored) {
-            }
-        });
     }
 }
@@ -10,13 +10,18 @@ import com.hypixel.hytale.server.core.inventory.container.ItemContainer;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import com.hypixel.hytale.server.core.universe.world.World;
+import dev.nxtime.hidearmor.net.BroadcastCache;
+import dev.nxtime.hidearmor.net.EquipmentInvalidationQueue;
+import dev.nxtime.hidearmor.net.HideArmorPacketReceiver;
+import dev.nxtime.hidearmor.net.ShadowFilter;
 import dev.nxtime.hidearmor.util.ColorConfig;
 
 import javax.annotation.Nonnull;
 import java.util.Arrays;
 
 /**
- * Debug command for inspecting armor inventory slot indices and item IDs.
+ * Debug command for inspecting armor inventory slot indices and item IDs, plus
+ * packet filter cache statistics.
  *
  * @author nxtime
  * @version 0.5.0
@@ -58,5 +63,36 @@ public class HideHelmetDebugCommand extends AbstractPlayerCommand {
                     Message.raw("]: ").color(ColorConfig.TEXT),
                     Message.raw(ids[i]).color(ColorConfig.TEXT)));
         }
+
+        BroadcastCache cache = HideArmorPacketReceiver.getBroadcastCache();
+        player.sendMessage(Message.join(
+                Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
+                Message.raw("Broadcast cache: ").color(ColorConfig.TEXT),
+                Message.raw(cache.getHits() + " hits, " + cache.getMisses() + " misses, "
+                        + cache.getEvictions() + " evictions").color(ColorConfig.HIGHLIGHT)));
+        player.sendMessage(Message.join(
+                Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
+                Message.raw("Redundant equipment updates dropped: ").color(ColorConfig.TEXT),
+                Message.raw(String.valueOf(HideArmorPacketReceiver.getSuppressedUpdates()))
+                        .color(ColorConfig.HIGHLIGHT)));
+        player.sendMessage(Message.join(
+                Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
+                Message.raw("Filter budget trips: ").color(ColorConfig.TEXT),
+                Message.raw(String.valueOf(HideArmorPacketReceiver.getBreakerTrips()))
+                        .color(ColorConfig.HIGHLIGHT)));
+        player.sendMessage(Message.join(
+                Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
+                Message.raw("Equipment rebroadcasts: ").color(ColorConfig.TEXT),
+                Message.raw(EquipmentInvalidationQueue.getRequested() + " requested, "
+                        + EquipmentInvalidationQueue.getCollapsed() + " collapsed, "
+                        + EquipmentInvalidationQueue.getPending() + " pending").color(ColorConfig.HIGHLIGHT)));
+        player.sendMessage(Message.join(
+                Message.raw(ColorConfig.BRAND).color(ColorConfig.PREFIX_COLOR),
+                Message.raw("Shadow filter: ").color(ColorConfig.TEXT),
+                Message.raw(ShadowFilter.getSamples() + " samples, " + ShadowFilter.getDivergences()
+                        + " divergences, " + ShadowFilter.getDropped() + " dropped, +"
+                        + ShadowFilter.getAverageWritePathNanos() + " ns/sample on write, "
+                        + ShadowFilter.getAverageReferenceNanos() / 1000 + " us/sample reference")
+                        .color(ColorConfig.HIGHLIGHT)));
     }
 }
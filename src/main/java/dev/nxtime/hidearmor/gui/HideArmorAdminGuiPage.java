@@ -66,6 +66,13 @@ public class HideArmorAdminGuiPage extends InteractiveCustomUIPage<HideArmorAdmi
                                         TranslationManager.get(player, "admin.section.forced"));
                         uiCommandBuilder.set("#ForceWarningLabel.Text",
                                         TranslationManager.get(player, "admin.force_warning"));
+                        var plugin = HideArmorPlugin.getInstance();
+                        var refresh = plugin != null ? plugin.getLatestRefresh() : null;
+                        // Shown only while a refresh is running; cleared once it has finished
+                        uiCommandBuilder.set("#RefreshProgressLabel.Text", refresh != null && refresh.isRunning()
+                                        ? TranslationManager.get(player, "admin.refresh_progress",
+                                                        refresh.getDone(), refresh.getTotal())
+                                        : "");
                         uiCommandBuilder.set("#SectionQuickSetup.Text",
                                         TranslationManager.get(player, "admin.section.quick_setup"));
                         uiCommandBuilder.set("#SectionLanguage.Text",
@@ -308,11 +315,16 @@ public class HideArmorAdminGuiPage extends InteractiveCustomUIPage<HideArmorAdmi
                                         // Immediately refresh all players' equipment when force settings change
                                         var plugin = HideArmorPlugin.getInstance();
                                         if (plugin != null) {
-                                                plugin.refreshAllPlayersEquipment();
+                                                plugin.refreshAllPlayersEquipment(refreshProgressListener(store));
                                         }
                                 } else {
                                         int newMask = currentDefault ^ (1 << slotToToggle);
                                         HideArmorState.setDefaultMask(newMask);
+                                        // Players on the default may now need (or no longer need) packet filtering
+                                        var plugin = HideArmorPlugin.getInstance();
+                                        if (plugin != null) {
+                                                plugin.refreshAllPlayersEquipment(refreshProgressListener(store));
+                                        }
                                 }
                         }
                 }
@@ -321,6 +333,22 @@ public class HideArmorAdminGuiPage extends InteractiveCustomUIPage<HideArmorAdmi
                 this.sendUpdate();
         }
 
+        /**
+         * Creates a listener that re-renders this page as a global equipment refresh
+         * progresses. Progress is reported from the refreshed worlds' threads, so the
+         * update is handed to this page's world.
+         */
+        private Runnable refreshProgressListener(Store<EntityStore> store) {
+                var world = store.getExternalData().getWorld();
+                return () -> world.execute(() -> {
+                        try {
+                                this.sendUpdate();
+                        } catch (Throwable ignored) {
+                                // Page was closed meanwhile
+                        }
+                });
+        }
+
         /**
          * Handles language change button click.
          */
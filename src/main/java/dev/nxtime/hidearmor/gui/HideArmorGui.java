@@ -141,9 +141,6 @@ public class HideArmorGui {
             }
         }
 
-        // Force equipment refresh to apply changes
-        forceRefresh(player);
-
         // Update UI to reflect new state (refresh the UI)
         // TODO: Refresh UI elements
         // refreshUI(player, newMask);
@@ -231,28 +228,4 @@ public class HideArmorGui {
     private static String removeFormatting(String text) {
         return text.replaceAll("§.", "");
     }
-
-    /**
-     * Forces an equipment refresh for the player to apply visual changes
-     * immediately.
-     * <p>
-     * Executes on the world thread to avoid concurrent modification issues.
-     * Silently catches and ignores any exceptions to prevent disrupting gameplay.
-     *
-     * @param player the player whose equipment should be refreshed
-     * @deprecated Use the forceRefresh methods in command classes instead
-     */
-    @Deprecated
-    private static void forceRefresh(Player player) {
-        var world = player.getWorld();
-        if (world == null)
-            return;
-
-        world.execute(() -> {
-            try {
-                player.invalidateEquipmentNetwork();
-            } catch (Throwable ignored) {
-            }
-        });
-    }
 }
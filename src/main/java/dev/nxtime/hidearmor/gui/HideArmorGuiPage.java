@@ -231,17 +231,6 @@ public class HideArmorGuiPage extends InteractiveCustomUIPage<HideArmorGuiPage.A
                                 case "AllowOthersLeggings" ->
                                         HideArmorState.toggleAllowOthers(player.getUuid(), HideArmorState.SLOT_LEGS);
                         }
-
-                        // Force equipment refresh
-                        var world = player.getWorld();
-                        if (world != null) {
-                                world.execute(() -> {
-                                        try {
-                                                player.invalidateEquipmentNetwork();
-                                        } catch (Throwable ignored) {
-                                        }
-                                });
-                        }
                 }
 
                 // Update the UI to reflect new state
@@ -0,0 +1,226 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.protocol.CachedPacket;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, weak-keyed cache of decoded broadcast packets.
+ * <p>
+ * Maps a broadcast {@code CachedPacket} (by identity) to its
+ * {@link UnwrappedEntityUpdates}, so a packet sent to N viewers is decoded once
+ * instead of N times. Replaces a synchronized {@code WeakHashMap}:
+ * <ul>
+ * <li><b>Reads</b> are lock-free: a volatile load of at most
+ * {@value #PROBES} slots.</li>
+ * <li><b>Writes</b> lock only one of {@value #STRIPES} stripes; tick
+ * eviction removes entries by compare-and-set. Each world counts its live
+ * entries, so its tick only scans the table while it owns some.</li>
+ * <li><b>Size</b> is hard-bounded by the slot count. A full bucket evicts its
+ * oldest entry.</li>
+ * <li><b>Lifetime</b> is scoped to the broadcast: each entry belongs to the
+ * world whose viewer decoded it, and {@link #endTick} evicts it at the second
+ * tick of that world after it was stored. The server writes a broadcast to all
+ * of its viewers within the tick it was built in, so by then it has been
+ * delivered everywhere; its decoded graph is released without waiting for GC
+ * or for a colliding write. Entries whose packet was collected never match
+ * again.</li>
+ * </ul>
+ * <p>
+ * Hit, miss and eviction counts are exposed for diagnostics.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+public final class BroadcastCache {
+
+    /** Number of consecutive slots probed per key. */
+    private static final int PROBES = 4;
+
+    /** Number of write lock stripes. */
+    private static final int STRIPES = 16;
+
+    /** Slot table; length is always a power of two. */
+    private final AtomicReferenceArray<Entry> table;
+
+    /** Mask applied to hashes to select a slot. */
+    private final int indexMask;
+
+    /** Write locks, selected by bucket. */
+    private final Object[] stripes = new Object[STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache with at least the given number of slots.
+     *
+     * @param capacity the minimum number of slots (rounded up to a power of two)
+     */
+    BroadcastCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(PROBES * 4, capacity - 1)) << 1;
+        this.table = new AtomicReferenceArray<>(size);
+        this.indexMask = size - 1;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Looks up the decoded form of a broadcast packet.
+     *
+     * @param key the broadcast packet
+     * @return the cached entry, or null on a miss
+     */
+    UnwrappedEntityUpdates get(CachedPacket<?> key) {
+        int base = index(key);
+        for (int i = 0; i < PROBES; i++) {
+            Entry e = table.get((base + i) & indexMask);
+            if (e != null && e.get() == key) {
+                hits.increment();
+                return e.value;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores the decoded form of a broadcast packet.
+     * <p>
+     * Collected entries in the key's bucket are dropped first. If the bucket is
+     * still full, its oldest entry is replaced.
+     *
+     * @param key   the broadcast packet
+     * @param value the decoded entry
+     * @param owner the world the broadcast is sent in (its viewers' registry)
+     */
+    void put(CachedPacket<?> key, UnwrappedEntityUpdates value, PlayerNetworkRegistry owner) {
+        int base = index(key);
+        long now = System.nanoTime();
+
+        synchronized (stripes[(base / PROBES) & (STRIPES - 1)]) {
+            int free = -1;
+            int oldestSlot = base;
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < PROBES; i++) {
+                int slot = base + i;
+                Entry e = table.get(slot);
+                if (e != null) {
+                    CachedPacket<?> packet = e.get();
+                    if (packet == null || packet == key) {
+                        // Only endTick races with this; whoever clears the slot counts it
+                        if (table.compareAndSet(slot, e, null))
+                            e.owner.cachedBroadcasts.decrementAndGet();
+                        e = null;
+                    } else if (e.createdNanos < oldest) {
+                        oldest = e.createdNanos;
+                        oldestSlot = slot;
+                    }
+                }
+                if (e == null && free < 0)
+                    free = slot;
+            }
+
+            if (free < 0) {
+                free = oldestSlot;
+                evictions.increment();
+            }
+            owner.cachedBroadcasts.incrementAndGet();
+            Entry replaced = table.getAndSet(free, new Entry(key, value, owner, now));
+            if (replaced != null)
+                replaced.owner.cachedBroadcasts.decrementAndGet();
+        }
+    }
+
+    /**
+     * Evicts the broadcasts of a world that have been delivered. Called once per
+     * tick of that world, on its thread.
+     * <p>
+     * An entry is evicted on the second call after it was stored, so it always
+     * outlives the tick its broadcast was written in, whichever order the
+     * server runs its systems in. Worlds without live entries (e.g. nobody in
+     * them hides anything) return after one atomic read instead of scanning the
+     * table.
+     *
+     * @param owner the ticking world's registry
+     */
+    void endTick(PlayerNetworkRegistry owner) {
+        if (owner.cachedBroadcasts.get() == 0)
+            return;
+        for (int slot = 0; slot <= indexMask; slot++) {
+            Entry e = table.get(slot);
+            if (e == null || e.owner != owner)
+                continue;
+            if (e.get() == null) {
+                // Packet collected: nothing held but the graph
+                if (table.compareAndSet(slot, e, null))
+                    owner.cachedBroadcasts.decrementAndGet();
+            } else if (e.delivered) {
+                if (table.compareAndSet(slot, e, null)) {
+                    owner.cachedBroadcasts.decrementAndGet();
+                    evictions.increment();
+                }
+            } else {
+                e.delivered = true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of lookups that found an entry
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that found no entry
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of live entries evicted (delivered or displaced)
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Computes the first slot of a key's bucket. Buckets are aligned to
+     * {@value #PROBES} slots so each one maps to exactly one lock stripe.
+     *
+     * @param key the broadcast packet (hashed by identity)
+     * @return the first slot index of the bucket
+     */
+    private int index(CachedPacket<?> key) {
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return ((h >>> 16) ^ h) & indexMask & -PROBES;
+    }
+
+    /**
+     * Table entry. The broadcast packet is the weak referent; only the delivery
+     * flag changes after construction.
+     */
+    private static final class Entry extends WeakReference<CachedPacket<?>> {
+        final UnwrappedEntityUpdates value;
+        final PlayerNetworkRegistry owner;
+        final long createdNanos;
+
+        /** Set by the first {@link #endTick} of the owner after the entry was stored. */
+        volatile boolean delivered;
+
+        Entry(CachedPacket<?> key, UnwrappedEntityUpdates value, PlayerNetworkRegistry owner, long createdNanos) {
+            super(key);
+            this.value = value;
+            this.owner = owner;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
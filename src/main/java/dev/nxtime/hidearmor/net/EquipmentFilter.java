@@ -0,0 +1,424 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.protocol.ComponentUpdate;
+import com.hypixel.hytale.protocol.ComponentUpdateType;
+import com.hypixel.hytale.protocol.EntityUpdate;
+import com.hypixel.hytale.protocol.Equipment;
+import com.hypixel.hytale.protocol.packets.entities.EntityUpdates;
+import dev.nxtime.hidearmor.HideArmorState;
+
+import java.util.UUID;
+
+/**
+ * Equipment filter for one viewer, specialized by what the viewer has enabled.
+ * <p>
+ * {@link HideArmorPacketReceiver} picks one of three implementations from the
+ * viewer's effective mask and swaps it atomically when the mask changes:
+ * <ul>
+ * <li>{@link SelfOnly}: only self-armor bits (0-3) are set. Never resolves
+ * other entities.</li>
+ * <li>{@link OthersOnly}: only hide-others bits (4-7) are set. Never looks at
+ * the viewer's own entity.</li>
+ * <li>{@link Combined}: both groups are set.</li>
+ * </ul>
+ * Each implementation owns its own entity loop, so every call site stays small
+ * and monomorphic for the JIT. The copy-on-write and interning logic they share
+ * lives in static helpers.
+ * <p>
+ * Hide decisions are evaluated entity by entity with scalar bit arithmetic.
+ * There is deliberately no SIMD path: {@code jdk.incubator.vector} only loads
+ * when the server JVM is started with {@code --add-modules}, which a plugin
+ * cannot require of its host, and without a JMH harness against the server API
+ * nothing shows that a batch pass would pay for itself.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+abstract sealed class EquipmentFilter {
+
+    /** Filter kind: nothing to hide. */
+    static final int KIND_NONE = 0;
+    /** Filter kind: self-armor bits only. */
+    static final int KIND_SELF = 1;
+    /** Filter kind: hide-others bits only. */
+    static final int KIND_OTHERS = 2;
+    /** Filter kind: both groups. */
+    static final int KIND_COMBINED = KIND_SELF | KIND_OTHERS;
+
+    /**
+     * Global intern table of filtered equipment components, shared by all
+     * receivers so viewers with the same hide pattern reuse one immutable copy.
+     */
+    private static final HiddenEquipmentCache HIDDEN_EQUIPMENT = new HiddenEquipmentCache(4096);
+
+    /** The network ID of the viewer's own entity. */
+    final int selfNetworkId;
+
+    /** The viewer's world registry. */
+    final PlayerNetworkRegistry players;
+
+    /**
+     * @param selfNetworkId the network ID of the viewer's own entity
+     * @param players       the viewer's world registry
+     */
+    EquipmentFilter(int selfNetworkId, PlayerNetworkRegistry players) {
+        this.selfNetworkId = selfNetworkId;
+        this.players = players;
+    }
+
+    /**
+     * Classifies a mask into the filter kind it needs.
+     *
+     * @param mask the viewer's effective 12-bit mask
+     * @return one of the {@code KIND_*} constants
+     */
+    static int kindOf(int mask) {
+        return ((mask & 0x0F) != 0 ? KIND_SELF : 0) | ((mask & 0xF0) != 0 ? KIND_OTHERS : 0);
+    }
+
+    /**
+     * Creates the filter for a kind.
+     *
+     * @param kind          one of {@link #KIND_SELF}, {@link #KIND_OTHERS},
+     *                      {@link #KIND_COMBINED}
+     * @param selfNetworkId the network ID of the viewer's own entity
+     * @param players       the viewer's world registry
+     * @return the specialized filter
+     */
+    static EquipmentFilter create(int kind, int selfNetworkId, PlayerNetworkRegistry players) {
+        return switch (kind) {
+            case KIND_SELF -> new SelfOnly(selfNetworkId, players);
+            case KIND_OTHERS -> new OthersOnly(selfNetworkId, players);
+            default -> new Combined(selfNetworkId, players);
+        };
+    }
+
+    /**
+     * @return this filter's {@code KIND_*} constant
+     */
+    abstract int kind();
+
+    /**
+     * Filters equipment components of an {@code EntityUpdates} packet.
+     *
+     * @param eu   the original packet
+     * @param mask the viewer's effective mask
+     * @return a filtered copy, or {@code eu} itself if nothing had to change
+     */
+    abstract EntityUpdates filter(EntityUpdates eu, int mask);
+
+    /**
+     * Computes the hide pattern for another player's entity.
+     *
+     * @param networkId the entity network ID
+     * @param mask      the viewer's effective mask
+     * @return the 4-bit pattern, or 0 if not a player or nothing to hide
+     */
+    final int othersBits(int networkId, int mask) {
+        UUID targetUuid = players.resolve(networkId); // This is another player's entity
+        if (targetUuid == null)
+            return 0; // Not a player entity
+
+        // Other player: mutual opt-in (viewer wants to hide AND target allows)
+        return HideArmorState.othersHidePattern(mask, HideArmorState.getMask(targetUuid));
+    }
+
+    /**
+     * Filters a decoded broadcast using its precomputed equipment index.
+     * <p>
+     * Visits only the player entities that carry equipment, already resolved to
+     * UUIDs, so the cost is O(equipment entries) instead of O(updates x
+     * components) and no registry lookup is needed. Allow-others bits are read
+     * from the targets' current masks. The caller must only pass an entry
+     * classified against the viewer's own world registry.
+     *
+     * @param entry         the decoded broadcast and its index
+     * @param mask          the viewer's effective mask
+     * @param selfNetworkId the network ID of the viewer's own entity
+     * @return a filtered copy, or {@code entry.packet} itself if nothing had to
+     *         change
+     */
+    static EntityUpdates filterIndexed(UnwrappedEntityUpdates entry, int mask, int selfNetworkId) {
+        EntityUpdates eu = entry.packet;
+        int[] positions = entry.indexPositions;
+        int[] networkIds = entry.indexNetworkIds;
+        UUID[] uuids = entry.indexUuids;
+
+        // Test mode (HideArmorTestCommand) would use othersHidePattern(mask, mask) for self
+        int selfBits = HideArmorState.selfHidePattern(mask);
+        int othersBits = (mask >>> HideArmorState.SLOT_HIDE_OTHERS_HEAD) & 0xF;
+
+        EntityUpdate[] updatesCopy = null;
+        for (int k = 0; k < positions.length; k++) {
+            int hideBits = networkIds[k] == selfNetworkId ? selfBits
+                    : othersBits != 0 ? HideArmorState.othersHidePattern(mask, HideArmorState.getMask(uuids[k])) : 0;
+            if (hideBits != 0) {
+                int i = positions[k];
+                updatesCopy = hideEquipment(eu, i, eu.updates[i], hideBits, updatesCopy);
+            }
+        }
+        return finish(eu, updatesCopy);
+    }
+
+    /**
+     * Returns the equipment carried by an entity update.
+     *
+     * @param upd the entity update
+     * @return the first equipment component's data, or null if there is none
+     */
+    static Equipment equipmentOf(EntityUpdate upd) {
+        ComponentUpdate[] components = upd.updates;
+        if (components == null)
+            return null;
+        for (ComponentUpdate cu : components) {
+            if (cu != null && cu.type == ComponentUpdateType.Equipment && cu.equipment != null)
+                return cu.equipment;
+        }
+        return null;
+    }
+
+    /**
+     * Hides armor slots in one entity update, copying lazily.
+     * <p>
+     * The packet-level array is cloned only when the first change is needed; the
+     * caller passes the current copy (or null) and keeps the returned one.
+     *
+     * @param eu          the original packet
+     * @param i           the index of {@code upd} in {@code eu.updates}
+     * @param upd         the entity update
+     * @param hideBits    the 4-bit hide pattern for this entity
+     * @param updatesCopy the packet-level copy so far, or null
+     * @return the packet-level copy, or null if still nothing changed
+     */
+    static EntityUpdate[] hideEquipment(EntityUpdates eu, int i, EntityUpdate upd, int hideBits,
+            EntityUpdate[] updatesCopy) {
+        if (upd.updates == null)
+            return updatesCopy;
+
+        EntityUpdate updCopy = null;
+
+        for (int j = 0; j < upd.updates.length; j++) {
+            ComponentUpdate cu = upd.updates[j];
+            if (cu == null)
+                continue;
+
+            // Check if this component update contains equipment (armor) data
+            if (cu.type == ComponentUpdateType.Equipment && cu.equipment != null) {
+                String[] armorIds = cu.equipment.armorIds;
+                if (armorIds == null || armorIds.length == 0)
+                    continue;
+
+                // Narrow the pattern to slots that exist and are not already blank, so
+                // updates that would come out identical never allocate a copy
+                int effectiveBits = effectiveHideBits(armorIds, hideBits);
+                if (effectiveBits == 0)
+                    continue;
+
+                // Lazy copying: Only clone the array when we actually need to modify it
+                if (updatesCopy == null) {
+                    updatesCopy = eu.updates.clone(); // Shallow copy of the updates array
+                }
+
+                // Clone the EntityUpdate only once to avoid mutating the original
+                if (updCopy == null) {
+                    updCopy = new EntityUpdate();
+                    updCopy.networkId = upd.networkId;
+                    updCopy.removed = upd.removed; // Preserve removal state
+                    updCopy.updates = upd.updates.clone(); // Shallow copy of component updates
+                    updatesCopy[i] = updCopy;
+                }
+
+                // Share one filtered component per (original, pattern) across viewers
+                ComponentUpdate hidden = HIDDEN_EQUIPMENT.get(cu, effectiveBits);
+                if (hidden == null) {
+                    hidden = createHiddenComponentUpdate(cu, effectiveBits);
+                    HIDDEN_EQUIPMENT.put(cu, effectiveBits, hidden);
+                }
+                updCopy.updates[j] = hidden;
+            }
+        }
+        return updatesCopy;
+    }
+
+    /**
+     * Builds the result packet.
+     *
+     * @param eu          the original packet
+     * @param updatesCopy the modified updates, or null if nothing changed
+     * @return {@code eu} if unchanged, otherwise a new packet
+     */
+    static EntityUpdates finish(EntityUpdates eu, EntityUpdate[] updatesCopy) {
+        // If nothing was modified, return the original packet unchanged
+        if (updatesCopy == null)
+            return eu;
+
+        // Build and return the modified packet with hidden armor
+        EntityUpdates out = new EntityUpdates();
+        out.removed = eu.removed; // Preserve entity removal state
+        out.updates = updatesCopy; // Use our modified copy with hidden armor
+        return out;
+    }
+
+    /**
+     * Restricts a 4-bit hide pattern to the armor slots that would actually change.
+     * <p>
+     * A slot only counts if it exists in {@code armorIds} and is not already
+     * blank ({@code ""}). Runs without allocating.
+     *
+     * @param armorIds the armor IDs from the original equipment component
+     * @param hideBits the requested hide pattern (bit N = armor slot N)
+     * @return the subset of {@code hideBits} that requires rewriting
+     */
+    static int effectiveHideBits(String[] armorIds, int hideBits) {
+        int effective = 0;
+        int limit = Math.min(armorIds.length, 4);
+        for (int slot = 0; slot < limit; slot++) {
+            if ((hideBits & (1 << slot)) == 0)
+                continue;
+            String id = armorIds[slot];
+            if (id == null || !id.isEmpty())
+                effective |= 1 << slot;
+        }
+        return effective;
+    }
+
+    /**
+     * Creates a modified copy of a component update with non-visible slots cleared.
+     * <p>
+     * Deep clones the Equipment component to handle packet-shared data safely.
+     *
+     * @param original The original component update
+     * @param hideBits 4-bit pattern where bit N set means armor slot N is hidden
+     * @return A new ComponentUpdate with hidden armor slots
+     */
+    static ComponentUpdate createHiddenComponentUpdate(ComponentUpdate original, int hideBits) {
+        ComponentUpdate copy = new ComponentUpdate();
+        copy.type = original.type;
+
+        Equipment originalEq = original.equipment;
+        if (originalEq == null) {
+            return copy; // Should not happen given caller checks, but safe
+        }
+        Equipment newEq = new Equipment();
+        // Preserving hand items is crucial as we only want to hide armor
+        newEq.rightHandItemId = originalEq.rightHandItemId;
+        newEq.leftHandItemId = originalEq.leftHandItemId;
+
+        if (originalEq.armorIds != null) {
+            newEq.armorIds = originalEq.armorIds.clone();
+            int limit = Math.min(newEq.armorIds.length, 4);
+            for (int i = 0; i < limit; i++) {
+                if ((hideBits & (1 << i)) != 0) {
+                    newEq.armorIds[i] = ""; // Hide slot by setting ID to empty string
+                }
+            }
+        }
+
+        copy.equipment = newEq;
+        return copy;
+    }
+
+    /**
+     * Viewer hides only their own armor (bits 0-3).
+     */
+    static final class SelfOnly extends EquipmentFilter {
+
+        SelfOnly(int selfNetworkId, PlayerNetworkRegistry players) {
+            super(selfNetworkId, players);
+        }
+
+        @Override
+        int kind() {
+            return KIND_SELF;
+        }
+
+        @Override
+        EntityUpdates filter(EntityUpdates eu, int mask) {
+            // Test mode (HideArmorTestCommand) would use othersHidePattern(mask, mask) here
+            int hideBits = HideArmorState.selfHidePattern(mask);
+            EntityUpdate[] updates = eu.updates;
+            if (hideBits == 0 || updates == null)
+                return eu;
+
+            EntityUpdate[] updatesCopy = null;
+            for (int i = 0; i < updates.length; i++) {
+                EntityUpdate upd = updates[i];
+                if (upd != null && upd.networkId == selfNetworkId)
+                    updatesCopy = hideEquipment(eu, i, upd, hideBits, updatesCopy);
+            }
+            return finish(eu, updatesCopy);
+        }
+    }
+
+    /**
+     * Viewer hides only other players' armor (bits 4-7, mutual opt-in).
+     */
+    static final class OthersOnly extends EquipmentFilter {
+
+        OthersOnly(int selfNetworkId, PlayerNetworkRegistry players) {
+            super(selfNetworkId, players);
+        }
+
+        @Override
+        int kind() {
+            return KIND_OTHERS;
+        }
+
+        @Override
+        EntityUpdates filter(EntityUpdates eu, int mask) {
+            EntityUpdate[] updates = eu.updates;
+            if (updates == null)
+                return eu;
+
+            EntityUpdate[] updatesCopy = null;
+            for (int i = 0; i < updates.length; i++) {
+                EntityUpdate upd = updates[i];
+                if (upd == null || upd.updates == null || upd.updates.length == 0 || upd.networkId == selfNetworkId)
+                    continue;
+
+                int hideBits = othersBits(upd.networkId, mask);
+                if (hideBits != 0)
+                    updatesCopy = hideEquipment(eu, i, upd, hideBits, updatesCopy);
+            }
+            return finish(eu, updatesCopy);
+        }
+    }
+
+    /**
+     * Viewer hides both their own armor and other players' armor.
+     */
+    static final class Combined extends EquipmentFilter {
+
+        Combined(int selfNetworkId, PlayerNetworkRegistry players) {
+            super(selfNetworkId, players);
+        }
+
+        @Override
+        int kind() {
+            return KIND_COMBINED;
+        }
+
+        @Override
+        EntityUpdates filter(EntityUpdates eu, int mask) {
+            EntityUpdate[] updates = eu.updates;
+            if (updates == null)
+                return eu;
+
+            // Test mode (HideArmorTestCommand) would use othersHidePattern(mask, mask) here
+            int selfBits = HideArmorState.selfHidePattern(mask);
+
+            EntityUpdate[] updatesCopy = null;
+            for (int i = 0; i < updates.length; i++) {
+                EntityUpdate upd = updates[i];
+                if (upd == null || upd.updates == null || upd.updates.length == 0)
+                    continue;
+
+                int hideBits = upd.networkId == selfNetworkId ? selfBits : othersBits(upd.networkId, mask);
+                if (hideBits != 0)
+                    updatesCopy = hideEquipment(eu, i, upd, hideBits, updatesCopy);
+            }
+            return finish(eu, updatesCopy);
+        }
+    }
+}
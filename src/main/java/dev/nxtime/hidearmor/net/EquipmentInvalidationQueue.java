@@ -0,0 +1,229 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.universe.world.World;
+import dev.nxtime.hidearmor.HideArmorState;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-world queue of equipment rebroadcasts ({@code invalidateEquipmentNetwork}).
+ * <p>
+ * Every part of the plugin that needs a player's equipment re-sent calls
+ * {@link #request} instead of invalidating directly. Requests for the same
+ * player collapse until the queue is flushed, and {@link HideArmorTickSystem}
+ * flushes each world's queue once per world tick, at most
+ * {@link HideArmorState#getInvalidationsPerTick()} players at a time; the rest
+ * stay queued, in request order, for the following ticks. Rapid GUI clicks or
+ * inventory vacuuming therefore cost one rebroadcast per player per tick, and
+ * a global refresh never rebroadcasts more than the budget in one tick.
+ * <p>
+ * A request can carry a callback that runs once the player has been handled:
+ * rebroadcast, or dropped because they left the world or disconnected. This is
+ * how a global refresh reports progress as rebroadcasts actually happen.
+ * <p>
+ * One queue exists per world, owned by that world's
+ * {@link PlayerNetworkRegistry}; a player's queued request is dropped when they
+ * leave the registry (disconnect or transfer). Requests can come from any
+ * thread; the rebroadcast itself always runs on the world thread. A player who
+ * changed worlds before the flush is skipped, as joining the new world
+ * re-requests them there.
+ * <p>
+ * <b>Thread-safety:</b> Each queue is guarded by its own monitor, held only
+ * to add or take entries. Ticks of worlds with nothing queued return after one
+ * atomic read.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorTickSystem
+ */
+public final class EquipmentInvalidationQueue {
+
+    /** Players queued across all worlds. */
+    private static final AtomicInteger PENDING = new AtomicInteger();
+
+    private static final LongAdder REQUESTED = new LongAdder();
+    private static final LongAdder COLLAPSED = new LongAdder();
+
+    /** Player UUID to request, in request order. Guarded by {@code this}. */
+    private final LinkedHashMap<UUID, Request> pending = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty queue for a world's registry.
+     */
+    EquipmentInvalidationQueue() {
+    }
+
+    /**
+     * Queues a rebroadcast of a player's equipment in their current world.
+     *
+     * @param player the player
+     */
+    public static void request(Player player) {
+        request(player, null);
+    }
+
+    /**
+     * Queues a rebroadcast of a player's equipment in their current world, and
+     * runs a callback once it has been handled.
+     * <p>
+     * If the player is already queued, the callback joins that request. If the
+     * player cannot be queued (no longer in a world), it runs right away.
+     *
+     * @param player    the player
+     * @param onHandled run after the rebroadcast (on the world thread), or when
+     *                  the request is dropped; may be null
+     */
+    public static void request(Player player, Runnable onHandled) {
+        World world;
+        try {
+            world = player.getWorld();
+        } catch (Throwable ignored) {
+            world = null; // Player might have disconnected
+        }
+        if (world == null) {
+            handled(onHandled);
+            return;
+        }
+
+        REQUESTED.increment();
+        PlayerNetworkRegistry.forWorld(world).invalidations.add(player, onHandled);
+    }
+
+    /**
+     * Flushes this queue within the per-tick budget. Must run on the world
+     * thread, once per tick.
+     *
+     * @param world the ticking world
+     */
+    void tick(World world) {
+        if (PENDING.get() == 0)
+            return;
+        flush(world);
+    }
+
+    /**
+     * @return the number of rebroadcasts requested so far
+     */
+    public static long getRequested() {
+        return REQUESTED.sum();
+    }
+
+    /**
+     * @return the number of requests merged into one already queued
+     */
+    public static long getCollapsed() {
+        return COLLAPSED.sum();
+    }
+
+    /**
+     * @return the number of players currently queued
+     */
+    public static int getPending() {
+        return PENDING.get();
+    }
+
+    /**
+     * Adds a player unless already queued, merging the callbacks.
+     */
+    private synchronized void add(Player player, Runnable onHandled) {
+        Request queued = pending.get(player.getUuid());
+        if (queued == null) {
+            pending.put(player.getUuid(), new Request(player, onHandled));
+            PENDING.incrementAndGet();
+        } else {
+            queued.then(onHandled);
+            COLLAPSED.increment();
+        }
+    }
+
+    /**
+     * Removes a player if queued, and runs their callbacks.
+     *
+     * @param uuid the player's UUID
+     */
+    void remove(UUID uuid) {
+        if (PENDING.get() == 0)
+            return;
+        Request removed;
+        synchronized (this) {
+            removed = pending.remove(uuid);
+        }
+        if (removed != null) {
+            PENDING.decrementAndGet();
+            handled(removed.onHandled);
+        }
+    }
+
+    /**
+     * Runs a request callback, if any.
+     */
+    private static void handled(Runnable onHandled) {
+        if (onHandled == null)
+            return;
+        try {
+            onHandled.run();
+        } catch (Throwable ignored) {
+            // A failing callback must not stop the flush
+        }
+    }
+
+    /**
+     * Rebroadcasts up to the budget of queued players, oldest first.
+     */
+    private void flush(World world) {
+        Request[] batch;
+        synchronized (this) {
+            if (pending.isEmpty())
+                return;
+            batch = new Request[Math.min(HideArmorState.getInvalidationsPerTick(), pending.size())];
+            Iterator<Request> it = pending.values().iterator();
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = it.next();
+                it.remove();
+            }
+        }
+        PENDING.addAndGet(-batch.length);
+
+        for (Request request : batch) {
+            try {
+                // A player who changed worlds is re-requested by the join in the new world
+                if (request.player.getWorld() == world)
+                    request.player.invalidateEquipmentNetwork();
+            } catch (Throwable ignored) {
+                // Player might have disconnected
+            }
+            handled(request.onHandled);
+        }
+    }
+
+    /**
+     * A queued rebroadcast. Guarded by the owning queue until taken by a flush.
+     */
+    private static final class Request {
+        final Player player;
+        Runnable onHandled;
+
+        Request(Player player, Runnable onHandled) {
+            this.player = player;
+            this.onHandled = onHandled;
+        }
+
+        /**
+         * Adds a callback to run after the existing one.
+         */
+        void then(Runnable next) {
+            if (next == null)
+                return;
+            Runnable first = onHandled;
+            onHandled = first == null ? next : () -> {
+                first.run();
+                next.run();
+            };
+        }
+    }
+}
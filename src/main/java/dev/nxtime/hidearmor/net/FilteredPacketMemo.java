@@ -0,0 +1,120 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.protocol.packets.entities.EntityUpdates;
+import dev.nxtime.hidearmor.HideArmorState;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Short-lived memo of filtered non-cached {@code EntityUpdates} packets.
+ * <p>
+ * The server often writes the same {@code EntityUpdates} object to many viewers
+ * one by one. For a viewer whose own entity carries no equipment in the packet,
+ * the result depends only on their 4-bit hide-others pattern and the targets'
+ * masks, so this table maps (packet identity, pattern) to the filtered object
+ * and later viewers with the same pattern reuse it. Results for viewers whose
+ * own entity is in the packet must never be stored. On servers where most
+ * players use the same preset, the packet is filtered once instead of once per
+ * viewer.
+ * <p>
+ * Each entry records the {@link HideArmorState#getMaskVersion() mask version}
+ * it was built at and stops matching once any mask changes.
+ * <p>
+ * Direct-mapped like {@link HiddenEquipmentCache}: a colliding insert replaces
+ * the previous entry and keys are held weakly. Entries older than
+ * {@link #WINDOW_NANOS} no longer match, so results built from older target
+ * settings are never reused after the packet has been delivered.
+ * <p>
+ * <b>Thread-safety:</b> Lock-free. Entries are immutable; a racing reader may
+ * observe a stale or missing entry, which only results in a miss.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+final class FilteredPacketMemo {
+
+    /** Age after which an entry no longer matches (a few ticks). */
+    private static final long WINDOW_NANOS = 250_000_000L;
+
+    /** Slot table; length is always a power of two. */
+    private final Entry[] table;
+
+    /** Mask applied to hashes to select a slot. */
+    private final int indexMask;
+
+    /**
+     * Creates a memo with at least the given number of slots.
+     *
+     * @param capacity the minimum number of slots (rounded up to a power of two)
+     */
+    FilteredPacketMemo(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        this.table = new Entry[size];
+        this.indexMask = size - 1;
+    }
+
+    /**
+     * Looks up the filtered result of a packet for a hide-others pattern.
+     *
+     * @param original    the original packet
+     * @param pattern     the viewer's 4-bit hide-others pattern
+     * @param maskVersion the current {@link HideArmorState#getMaskVersion()}
+     * @return the shared result ({@code original} itself if filtering changed
+     *         nothing), or null on a miss
+     */
+    EntityUpdates get(EntityUpdates original, int pattern, int maskVersion) {
+        Entry e = table[index(original, pattern)];
+        if (e == null || e.pattern != pattern || e.maskVersion != maskVersion || e.get() != original
+                || System.nanoTime() - e.createdNanos > WINDOW_NANOS)
+            return null;
+        return e.result != null ? e.result : original;
+    }
+
+    /**
+     * Stores the filtered result of a packet for a hide-others pattern.
+     * <p>
+     * The stored result is shared across viewers and must never be mutated.
+     *
+     * @param original    the original packet
+     * @param pattern     the viewer's 4-bit hide-others pattern
+     * @param maskVersion the mask version read before filtering
+     * @param result      the filtered packet, or {@code original} if unchanged
+     */
+    void put(EntityUpdates original, int pattern, int maskVersion, EntityUpdates result) {
+        // Storing the original as its own value would pin the weak key
+        table[index(original, pattern)] = new Entry(original, pattern, maskVersion,
+                result != original ? result : null, System.nanoTime());
+    }
+
+    /**
+     * Computes the slot index for a key.
+     *
+     * @param original the original packet (hashed by identity)
+     * @param pattern  the 4-bit hide-others pattern
+     * @return the slot index
+     */
+    private int index(EntityUpdates original, int pattern) {
+        int h = System.identityHashCode(original) * 0x9E3779B9;
+        return ((h >>> 16) ^ h ^ (pattern * 0x61C88647)) & indexMask;
+    }
+
+    /**
+     * Immutable table entry. The original packet is the weak referent; a null
+     * result means "unchanged".
+     */
+    private static final class Entry extends WeakReference<EntityUpdates> {
+        final int pattern;
+        final int maskVersion;
+        final EntityUpdates result;
+        final long createdNanos;
+
+        Entry(EntityUpdates original, int pattern, int maskVersion, EntityUpdates result, long createdNanos) {
+            super(original);
+            this.pattern = pattern;
+            this.maskVersion = maskVersion;
+            this.result = result;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.protocol.ComponentUpdate;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Bounded intern table for filtered equipment component updates.
+ * <p>
+ * Maps an (original {@code ComponentUpdate} identity, 4-bit hide pattern) pair
+ * to the filtered copy built for it, so every viewer applying the same pattern
+ * to the same packet shares one result instead of building its own. Broadcasts
+ * to large crowds then allocate once per distinct pattern rather than once per
+ * viewer.
+ * <p>
+ * The table is direct-mapped with a fixed number of slots: a colliding insert
+ * simply replaces the previous entry. Keys are held weakly, so an entry stops
+ * matching as soon as its source packet has been collected, and is overwritten
+ * by the next insert into the same slot.
+ * <p>
+ * <b>Thread-safety:</b> Lock-free. Entries are immutable and published through a
+ * plain array; a racing reader may observe a stale or missing entry, which only
+ * results in a cache miss.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+final class HiddenEquipmentCache {
+
+    /** Slot table; length is always a power of two. */
+    private final Entry[] table;
+
+    /** Mask applied to hashes to select a slot. */
+    private final int indexMask;
+
+    /**
+     * Creates a cache with at least the given number of slots.
+     *
+     * @param capacity the minimum number of slots (rounded up to a power of two)
+     */
+    HiddenEquipmentCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        this.table = new Entry[size];
+        this.indexMask = size - 1;
+    }
+
+    /**
+     * Looks up the filtered copy of a component for a hide pattern.
+     *
+     * @param original the original equipment component update
+     * @param hideBits the effective 4-bit hide pattern
+     * @return the shared filtered component, or null on a miss
+     */
+    ComponentUpdate get(ComponentUpdate original, int hideBits) {
+        Entry e = table[index(original, hideBits)];
+        if (e != null && e.hideBits == hideBits && e.get() == original)
+            return e.result;
+        return null;
+    }
+
+    /**
+     * Stores the filtered copy of a component for a hide pattern.
+     * <p>
+     * The stored result is shared across viewers and must never be mutated.
+     *
+     * @param original the original equipment component update
+     * @param hideBits the effective 4-bit hide pattern
+     * @param result   the filtered component built for this pattern
+     */
+    void put(ComponentUpdate original, int hideBits, ComponentUpdate result) {
+        table[index(original, hideBits)] = new Entry(original, hideBits, result);
+    }
+
+    /**
+     * Computes the slot index for a key.
+     *
+     * @param original the original component (hashed by identity)
+     * @param hideBits the 4-bit hide pattern
+     * @return the slot index
+     */
+    private int index(ComponentUpdate original, int hideBits) {
+        int h = System.identityHashCode(original) * 0x9E3779B9;
+        return ((h >>> 16) ^ h ^ (hideBits * 0x61C88647)) & indexMask;
+    }
+
+    /**
+     * Immutable table entry. The original component is the weak referent.
+     */
+    private static final class Entry extends WeakReference<ComponentUpdate> {
+        final int hideBits;
+        final ComponentUpdate result;
+
+        Entry(ComponentUpdate original, int hideBits, ComponentUpdate result) {
+            super(original);
+            this.hideBits = hideBits;
+            this.result = result;
+        }
+    }
+}
@@ -3,27 +3,21 @@ package dev.nxtime.hidearmor.net;
 import com.hypixel.hytale.protocol.Packet;
 import com.hypixel.hytale.protocol.CachedPacket;
 import com.hypixel.hytale.protocol.ComponentUpdate;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import com.hypixel.hytale.protocol.ComponentUpdateType;
 import com.hypixel.hytale.protocol.EntityUpdate;
 import com.hypixel.hytale.protocol.Equipment;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import com.hypixel.hytale.protocol.packets.entities.EntityUpdates;
 import com.hypixel.hytale.server.core.receiver.IPacketReceiver;
 
-import com.hypixel.hytale.server.core.entity.entities.Player;
-import com.hypixel.hytale.server.core.universe.world.World;
 import dev.nxtime.hidearmor.HideArmorState;
-// import dev.nxtime.hidearmor.commands.HideArmorTestCommand; // Uncomment for test mode
 import dev.nxtime.hidearmor.util.PluginLogger;
 
 import javax.annotation.Nonnull;
+import java.util.Arrays;
 import java.util.UUID;
-
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
-import java.util.WeakHashMap;
-import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Intercepts outgoing packets sent to the client to hide armor pieces visually.
@@ -51,12 +45,20 @@ import java.util.Collections;
  * durability,
  * and combat calculations are completely unaffected.
  * <p>
- * <b>Performance:</b> Uses caching to minimize entity UUID lookups. Early exits
- * when no settings are configured for the viewer.
+ * <b>Performance:</b> Resolves entity UUIDs through the shared
+ * {@link PlayerNetworkRegistry} of the world. Early exits when no settings are
+ * configured for the viewer.
+ * <p>
+ * Broadcasts are filtered on the decoded object graph rather than by patching
+ * armor ID bytes in the serialized buffer. The {@code EntityUpdates} wire
+ * layout is generated by the server's protocol code and may change between
+ * server builds, and {@code CachedPacket} exposes its bytes only through
+ * {@code serialize}. A broadcast is therefore decoded once, and only one
+ * re-encode happens per distinct hide pattern (see
+ * {@link UnwrappedEntityUpdates}).
  * <p>
- * <b>Thread-safety:</b> Safe for concurrent packet processing. Uses
- * {@link ConcurrentHashMap}
- * for entity UUID caching.
+ * <b>Thread-safety:</b> Safe for concurrent packet processing. All shared
+ * caches are lock-free on reads.
  *
  * @author nxtime
  * @version 0.4.0
@@ -74,30 +76,89 @@ public final class HideArmorPacketReceiver implements IPacketReceiver {
     private final int selfNetworkId;
 
     /**
-     * The world instance for entity lookups. Stored as Object for SDK
-     * compatibility.
+     * The world-level network ID to player registry, shared by every receiver in
+     * the viewer's world.
+     */
+    private final PlayerNetworkRegistry players;
+
+    /**
+     * Filter specialized for the viewer's current mask kind, or null until the
+     * first packet that needs filtering.
+     */
+    private volatile EquipmentFilter filter;
+
+    /**
+     * Last equipment sent to this viewer per entity, used to drop updates the
+     * client already has.
+     */
+    private final SentEquipmentState sent;
+
+    /**
+     * Real (unfiltered) equipment of each player entity as last passed through
+     * this wrapper, until the entity is removed from the viewer's client. Only
+     * values seen by this wrapper are kept, so resyncs never send equipment the
+     * viewer's client has not been told about. Written only when an entity
+     * spawns, changes equipment or is removed.
      */
-    private final Object world;
+    private final NetworkIdMap<Equipment> shownEquipment = new NetworkIdMap<>(32);
 
     /**
-     * Cache mapping network IDs to player UUIDs.
-     * Populated on-demand to avoid repeated entity store queries.
+     * Bumped whenever {@link #shownEquipment} is wiped, so a view rebuild started
+     * before the wipe cannot mark the records complete.
      */
-    private final ConcurrentHashMap<Integer, UUID> networkIdCache = new ConcurrentHashMap<>();
+    private final AtomicInteger viewEpoch = new AtomicInteger();
+
+    /**
+     * The {@link #viewEpoch} at which {@link #shownEquipment} is known to hold
+     * every player spawned on the viewer's client, or -1. While it matches, a
+     * player without a record is not spawned there and will arrive later with
+     * filtered equipment.
+     */
+    private volatile int completeEpoch = -1;
+
+    /** The {@link #viewEpoch} of the running view rebuild, or -1. */
+    private volatile int rebuildEpoch = -1;
+
+    /** Falls back to self-only filtering while filtering is over budget. */
+    private final LatencyBreaker breaker;
 
     /**
      * Global cache for unwrapped EntityUpdates from CachedPackets.
-     * Uses WeakHashMap so entries are cleared when the server finishes broadcasting
-     * the packet.
+     * Lock-free on reads and bounded; entries are evicted by the world tick once
+     * the server has finished broadcasting the packet.
      * Prevents O(N) deserialization overhead.
      */
-    private static final Map<CachedPacket<?>, EntityUpdates> UNWRAPPED_CACHE = Collections
-            .synchronizedMap(new WeakHashMap<>());
+    private static final BroadcastCache UNWRAPPED_CACHE = new BroadcastCache(1024);
+
+    /**
+     * Global memo of filtered non-cached EntityUpdates, shared by viewers with the
+     * same hide-others pattern.
+     */
+    private static final FilteredPacketMemo SHARED_RESULTS = new FilteredPacketMemo(1024);
+
+    /** {@link #observe(EntityUpdates)} flag: the viewer's own entity carries equipment. */
+    private static final int SEEN_SELF = 1;
+
+    /** {@link #observe(EntityUpdates)} flag: another player entity carries equipment. */
+    private static final int SEEN_PLAYERS = 2;
+
+    /**
+     * Largest packet ID a filter can be registered for. Only bounds the table
+     * size; packets with higher IDs simply have no filter.
+     */
+    private static final int MAX_PACKET_ID = 0xFFFF;
 
     /**
-     * Sentinel UUID for negative caching (non-player entities).
+     * Filters indexed by packet ID, replaced as a whole on registration so the
+     * hot path is one volatile load, a bounds check and one array load. The
+     * table only extends to the highest registered ID; any packet ID outside it
+     * has no filter and passes through.
      */
-    private static final UUID NULL_UUID = new UUID(0, 0);
+    private static volatile PacketFilter[] filters = new PacketFilter[0];
+
+    static {
+        registerFilter(EntityUpdates.PACKET_ID, (receiver, packet, mask) -> receiver.filterEquipment(packet, mask));
+    }
 
     /**
      * Creates a new packet receiver wrapper for a specific player.
@@ -105,14 +166,116 @@ public final class HideArmorPacketReceiver implements IPacketReceiver {
      * @param delegate      the original packet receiver to wrap
      * @param viewerUuid    the UUID of the player who will receive these packets
      * @param selfNetworkId the network ID of the viewer's own entity
-     * @param world         the world instance for entity lookups (uses Object type
-     *                      for SDK compatibility)
+     * @param players       the player registry of the viewer's world
      */
-    public HideArmorPacketReceiver(IPacketReceiver delegate, UUID viewerUuid, int selfNetworkId, Object world) {
+    public HideArmorPacketReceiver(IPacketReceiver delegate, UUID viewerUuid, int selfNetworkId,
+            PlayerNetworkRegistry players) {
         this.delegate = delegate;
         this.viewerUuid = viewerUuid;
         this.selfNetworkId = selfNetworkId;
-        this.world = world;
+        this.players = players;
+        this.sent = new SentEquipmentState(selfNetworkId);
+        this.breaker = new LatencyBreaker(viewerUuid);
+    }
+
+    /**
+     * Checks whether a viewer with the given effective mask needs this wrapper.
+     * <p>
+     * Only self-armor (0-3) and hide-others (4-7) bits change what a viewer sees;
+     * allow-others bits are evaluated on other viewers' receivers.
+     *
+     * @param mask the viewer's effective 12-bit mask
+     * @return true if packets to this viewer must be filtered
+     */
+    public static boolean isRequiredFor(int mask) {
+        return EquipmentFilter.kindOf(mask) != EquipmentFilter.KIND_NONE;
+    }
+
+    /**
+     * Registers the filter for a packet ID, replacing any previous one.
+     * <p>
+     * {@code EntityUpdates} is registered by default. Other packet types that
+     * carry armor can be covered the same way without slowing down packets that
+     * have no filter.
+     *
+     * @param packetId the protocol packet ID
+     * @param filter   the filter, or null to remove it
+     * @throws IllegalArgumentException if the packet ID is negative or above
+     *                                  {@value #MAX_PACKET_ID}
+     */
+    public static synchronized void registerFilter(int packetId, PacketFilter filter) {
+        if (packetId < 0 || packetId > MAX_PACKET_ID)
+            throw new IllegalArgumentException("Packet ID out of range: " + packetId);
+        PacketFilter[] current = filters;
+        PacketFilter[] next = Arrays.copyOf(current, Math.max(current.length, packetId + 1));
+        next[packetId] = filter;
+        filters = next;
+    }
+
+    /**
+     * Returns the UUID of the player receiving these packets.
+     *
+     * @return the viewer's UUID
+     */
+    public UUID getViewerUuid() {
+        return viewerUuid;
+    }
+
+    /**
+     * Returns the network ID of the viewer's own entity.
+     *
+     * @return the viewer's network ID
+     */
+    public int getSelfNetworkId() {
+        return selfNetworkId;
+    }
+
+    /**
+     * Returns the wrapped packet receiver, used when removing this wrapper.
+     *
+     * @return the original packet receiver
+     */
+    public IPacketReceiver getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the shared cache of decoded broadcast packets, for diagnostics.
+     *
+     * @return the broadcast cache
+     */
+    public static BroadcastCache getBroadcastCache() {
+        return UNWRAPPED_CACHE;
+    }
+
+    /**
+     * Evicts the decoded broadcasts of a world that have been delivered to all
+     * their viewers. Called once per world tick.
+     *
+     * @param players the ticking world's registry
+     */
+    static void onWorldTick(PlayerNetworkRegistry players) {
+        UNWRAPPED_CACHE.endTick(players);
+    }
+
+    /**
+     * Returns how many redundant equipment updates were dropped across all
+     * viewers, for diagnostics.
+     *
+     * @return the number of suppressed equipment components
+     */
+    public static long getSuppressedUpdates() {
+        return SentEquipmentState.getSuppressedCount();
+    }
+
+    /**
+     * Returns how often a receiver fell back to self-only filtering because it
+     * exceeded the filter time budget, for diagnostics.
+     *
+     * @return the number of circuit breaker trips
+     */
+    public static long getBreakerTrips() {
+        return LatencyBreaker.getTripCount();
     }
 
     /**
@@ -126,12 +289,9 @@ public final class HideArmorPacketReceiver implements IPacketReceiver {
      */
     @Override
     public void write(@Nonnull Packet packet) {
-        // Temporary debug: Log packet types to find what's leaking armor
-        // if (packet.getClass().getSimpleName().contains("Update")) {
-        // dev.nxtime.hidearmor.util.PluginLogger.debug("Sending packet: " +
-        // packet.getClass().getSimpleName());
-        // }
-        delegate.write(maybeModify(packet));
+        Packet out = maybeModify(packet);
+        if (out != null)
+            delegate.write(out);
     }
 
     /**
@@ -145,19 +305,70 @@ public final class HideArmorPacketReceiver implements IPacketReceiver {
      */
     @Override
     public void writeNoCache(@Nonnull Packet packet) {
-        delegate.writeNoCache(maybeModify(packet));
+        Packet out = maybeModify(packet);
+        if (out != null)
+            delegate.writeNoCache(out);
     }
 
     /**
-     * Potentially modifies a packet to hide armor pieces based on visibility
-     * settings.
+     * Dispatches a packet to the filter registered for its ID.
+     * <p>
+     * Packets without a filter cost one array load and are passed through before
+     * the viewer's mask is read. Filter time is reported to the
+     * {@link LatencyBreaker}; while it is open, only the self-armor bits are
+     * applied, and the viewer's view of others is refreshed once it closes.
+     *
+     * @param packet the original packet from the server
+     * @return the packet to send, or null if nothing is left to send
+     */
+    private Packet maybeModify(Packet packet) {
+        int id = packet.getId();
+        PacketFilter[] table = filters;
+        // IDs outside the table (negative or above the highest registered) have no filter
+        PacketFilter packetFilter = id >= 0 && id < table.length ? table[id] : null;
+        if (packetFilter == null)
+            return packet;
+
+        int mask = HideArmorState.getMask(viewerUuid);
+
+        // Early return: If no settings enabled for this viewer, pass packet through
+        // unchanged (allow-others bits only affect what other viewers see)
+        if (!isRequiredFor(mask)) {
+            untrack();
+            return packet;
+        }
+
+        if (breaker.isOpen()) {
+            // Degraded: own armor only, no lookups of other players
+            mask &= 0xF;
+            if (mask != 0)
+                return packetFilter.filter(this, packet, mask);
+            untrack();
+            return packet;
+        }
+        if (breaker.pollClosed() && (mask & 0xF0) != 0)
+            refreshAfterDegraded(); // Only hide-others filtering was skipped
+
+        long start = System.nanoTime();
+        Packet out = packetFilter.filter(this, packet, mask);
+        breaker.record(System.nanoTime() - start);
+        return out;
+    }
+
+    /**
+     * Potentially modifies an {@code EntityUpdates} packet to hide armor pieces
+     * based on visibility settings. Registered as the filter for
+     * {@link EntityUpdates#PACKET_ID}.
      * <p>
      * This method performs several optimizations:
      * <ul>
-     * <li>Early exit if viewer has no settings configured (mask == 0)</li>
      * <li>Only processes {@code EntityUpdates} packets</li>
      * <li>Only modifies equipment components</li>
      * <li>Uses lazy copying to avoid cloning unchanged packets</li>
+     * <li>Evaluates slots with bitmask arithmetic, so packets that pass through
+     * unchanged cause no heap allocation</li>
+     * <li>Drops equipment updates identical to what this viewer last received
+     * (see {@link SentEquipmentState})</li>
      * </ul>
      * <p>
      * The actual hiding logic depends on whether the entity is the viewer's own:
@@ -166,19 +377,17 @@ public final class HideArmorPacketReceiver implements IPacketReceiver {
      * <li><b>Others:</b> Uses mutual opt-in (hide-others bits AND allow-others
      * bits)</li>
      * </ul>
+     * Both cases are reduced to a 4-bit hide pattern per entity, so each entity
+     * costs at most one target mask lookup regardless of how many slots it has.
+     * The loop itself lives in an {@link EquipmentFilter} specialized for the
+     * groups the viewer has enabled.
      *
      * @param packet the original packet from the server
-     * @return the modified packet with hidden armor, or the original if no
-     *         modifications needed
+     * @param mask   the viewer's effective mask
+     * @return the modified packet with hidden armor, the original if no
+     *         modifications needed, or null if nothing is left to send
      */
-    private Packet maybeModify(Packet packet) {
-        int mask = HideArmorState.getMask(viewerUuid);
-
-        // Early return: If no settings enabled for this viewer, pass packet through
-        // unchanged
-        if (mask == 0)
-            return packet;
-
+    private Packet filterEquipment(Packet packet, int mask) {
         // Handle CachedPacket unwrapping for EntityUpdates (Packet ID 161)
         // This ensures broadcasted packets (like global equipment updates) are properly
         // filtered
@@ -187,19 +396,22 @@ public final class HideArmorPacketReceiver implements IPacketReceiver {
             CachedPacket<?> cached = (CachedPacket<?>) packet;
             if (cached.getId() == EntityUpdates.PACKET_ID) {
                 // Try to get from cache first
-                EntityUpdates eu = UNWRAPPED_CACHE.get(cached);
+                UnwrappedEntityUpdates entry = UNWRAPPED_CACHE.get(cached);
 
-                if (eu == null) {
-                    // Cache miss: Deserialize
+                if (entry == null) {
+                    // Cache miss: Deserialize from a pooled buffer (per-thread arena cache),
+                    // so unwrapping a broadcast does not allocate a fresh buffer each time
                     ByteBuf buf = null;
                     try {
-                        buf = Unpooled.buffer(cached.getCachedSize());
+                        buf = PooledByteBufAllocator.DEFAULT.directBuffer(cached.getCachedSize());
                         cached.serialize(buf);
-                        eu = EntityUpdates.deserialize(buf, 0);
+                        EntityUpdates eu = EntityUpdates.deserialize(buf, 0);
 
-                        // Cache the result
+                        // Cache the result (a shared marker if it holds no equipment)
                         if (eu != null) {
-                            UNWRAPPED_CACHE.put(cached, eu);
+                            purgeRemoved(eu); // Once per broadcast, not per viewer
+                            entry = UnwrappedEntityUpdates.of(eu, players);
+                            UNWRAPPED_CACHE.put(cached, entry, players);
                         }
                     } catch (Exception e) {
                         PluginLogger.error("Failed to deserialize CachedPacket", e);
@@ -211,15 +423,21 @@ public final class HideArmorPacketReceiver implements IPacketReceiver {
                 }
 
                 // If we have a valid EntityUpdates (from cache or fresh), process it
-                if (eu != null) {
-                    Packet modified = maybeModify(eu);
-                    // If modified, return the raw modified packet (breaks cache for this viewer)
-                    if (modified != eu) {
-                        return modified;
+                if (entry != null) {
+                    // Broadcast results are shared, so these entities are no longer tracked
+                    if (!sent.isEmpty()) {
+                        sent.forget(entry.removedNetworkIds());
+                        sent.forget(entry.equipmentNetworkIds());
                     }
+                    observe(entry);
+                    Packet out = filterCached(cached, entry, mask);
+                    if (entry.packet != null && ShadowFilter.shouldSample())
+                        ShadowFilter.submit(entry.packet, out == cached ? entry.packet : out, mask, selfNetworkId,
+                                players);
+                    return out;
                 }
             }
-            // If not EntityUpdates or not modified, return original cached packet
+            // If not EntityUpdates, return original cached packet
             return packet;
         }
 
@@ -227,181 +445,375 @@ public final class HideArmorPacketReceiver implements IPacketReceiver {
         if (!(packet instanceof EntityUpdates eu))
             return packet;
 
-        if (eu.updates == null || eu.updates.length == 0)
-            return packet;
-
-        // Track whether we've modified anything to avoid unnecessary cloning
-        boolean modified = false;
-        EntityUpdate[] updatesCopy = null;
-
-        for (int i = 0; i < eu.updates.length; i++) {
-            EntityUpdate upd = eu.updates[i];
-            if (upd == null)
-                continue;
-
-            if (upd.updates == null || upd.updates.length == 0)
-                continue;
-
-            // Determine which UUID this entity belongs to
-            UUID targetUuid;
-            // Test mode disabled - uncomment to enable single-player testing
-            // boolean isTestMode = HideArmorTestCommand.isTestModeEnabled(viewerUuid);
-            boolean isTestMode = false;
-
-            if (upd.networkId == selfNetworkId) {
-                // This is the viewer's own entity
-                targetUuid = viewerUuid;
-            } else {
-                targetUuid = resolveEntityUuid(upd.networkId); // This is another player's entity
-                if (targetUuid == null)
-                    continue; // Not a player entity or couldn't resolve
-            }
+        purgeRemoved(eu);
+        EntityUpdates filtered = filterShared(eu, mask, observe(eu));
+        if (ShadowFilter.shouldSample())
+            ShadowFilter.submit(eu, filtered, mask, selfNetworkId, players);
+        return sent.suppressUnchanged(filtered);
+    }
 
-            EntityUpdate updCopy = null;
+    /**
+     * Filters a non-cached packet for this viewer, sharing the result with other
+     * viewers of the same packet where possible.
+     * <p>
+     * If the viewer's own entity carries equipment in the packet, the result is
+     * personal, whatever the self bits: the filter treats that entity by the
+     * viewer's self settings and skips it for hide-others, so the result must
+     * never be handed to another viewer. Packets without any player equipment
+     * (movement, stats, mobs) have nothing to hide and pass through without
+     * touching the memo, so they allocate nothing. Otherwise the result depends
+     * only on the hide-others pattern and the targets' masks, and is memoized
+     * per (packet, pattern, mask version).
+     *
+     * @param eu   the original packet
+     * @param mask the viewer's effective mask
+     * @param seen the {@code SEEN_*} flags of the packet, from
+     *             {@link #observe(EntityUpdates)}
+     * @return a filtered packet, or {@code eu} itself if nothing had to change
+     */
+    private EntityUpdates filterShared(EntityUpdates eu, int mask, int seen) {
+        if ((seen & SEEN_SELF) != 0)
+            return filterEntityUpdates(eu, mask); // Contains a self-specific decision
+        if ((seen & SEEN_PLAYERS) == 0)
+            return eu; // No player equipment: nothing to hide
+
+        int pattern = (mask >>> HideArmorState.SLOT_HIDE_OTHERS_HEAD) & 0xF;
+        if (pattern == 0)
+            return eu; // Self-only viewer whose entity is not in the packet
+
+        int maskVersion = HideArmorState.getMaskVersion();
+        EntityUpdates result = SHARED_RESULTS.get(eu, pattern, maskVersion);
+        if (result == null) {
+            result = filterEntityUpdates(eu, mask);
+            SHARED_RESULTS.put(eu, pattern, maskVersion, result);
+        }
+        return result;
+    }
 
-            for (int j = 0; j < upd.updates.length; j++) {
-                ComponentUpdate cu = upd.updates[j];
-                if (cu == null)
-                    continue;
+    /**
+     * Filters a decoded broadcast for this viewer, reusing a shared serialized
+     * variant where possible.
+     * <p>
+     * If the viewer's own entity carries no equipment in the packet, the result
+     * depends only on the viewer's hide-others bits (4-7). That pattern selects
+     * one of at most 16 shared variants: either the original cached packet (no
+     * change) or a re-serialized {@code CachedPacket} of the filtered copy. Only
+     * the first viewer with a given pattern pays for filtering and encoding.
+     * <p>
+     * Viewers whose own equipment is in the packet get a personal result, since
+     * their self-armor bits also apply. Both paths walk only the broadcast's
+     * precomputed equipment index. A viewer in a different world than the one
+     * the index was classified against filters the decoded packet with their own
+     * registry instead.
+     *
+     * @param cached the original broadcast packet
+     * @param entry  the decoded packet and its variants
+     * @param mask   the viewer's effective mask
+     * @return the packet to send to this viewer
+     */
+    private Packet filterCached(CachedPacket<?> cached, UnwrappedEntityUpdates entry, int mask) {
+        // Movement/stat-only broadcasts: nothing to filter, no walk over the updates
+        if (!entry.hasEquipment())
+            return cached;
+
+        if (entry.players != players) {
+            // Index classified against another world's players: personal result
+            EntityUpdates modified = filterEntityUpdates(entry.packet, mask);
+            return modified == entry.packet ? cached : modified;
+        }
 
-                // Check if this component update contains equipment (armor) data
-                if (cu.type == ComponentUpdateType.Equipment && cu.equipment != null) {
-                    String[] armorIds = cu.equipment.armorIds;
-                    if (armorIds == null || armorIds.length == 0)
-                        continue;
-
-                    // Check which armor slots should be hidden
-                    boolean[] hideSlots = new boolean[4];
-                    boolean shouldHideAny = false;
-
-                    int[] slots = new int[] {
-                            HideArmorState.SLOT_HEAD,
-                            HideArmorState.SLOT_CHEST,
-                            HideArmorState.SLOT_HANDS,
-                            HideArmorState.SLOT_LEGS
-                    };
-
-                    for (int slot : slots) {
-                        if (slot < 0 || slot >= armorIds.length)
-                            continue;
-
-                        boolean shouldHide;
-                        if (targetUuid.equals(viewerUuid) && !isTestMode) {
-                            // Self armor (normal mode): check self-armor settings
-                            shouldHide = HideArmorState.isHidden(viewerUuid, slot);
-                        } else if (targetUuid.equals(viewerUuid) && isTestMode) {
-                            // Self armor (test mode): apply mutual opt-in logic to own armor
-                            shouldHide = HideArmorState.shouldHideOtherPlayerArmor(viewerUuid, viewerUuid, slot);
-                        } else {
-                            // Other player: check mutual opt-in (viewer wants to hide AND target allows)
-                            shouldHide = HideArmorState.shouldHideOtherPlayerArmor(viewerUuid, targetUuid, slot);
-                        }
+        if (entry.hasEquipmentFor(selfNetworkId)) {
+            // Personal result: raw modified packet (breaks cache for this viewer only)
+            Packet modified = EquipmentFilter.filterIndexed(entry, mask, selfNetworkId);
+            return modified == entry.packet ? cached : modified;
+        }
 
-                        hideSlots[slot] = shouldHide;
-                        if (shouldHide)
-                            shouldHideAny = true;
-                    }
+        int pattern = (mask >>> HideArmorState.SLOT_HIDE_OTHERS_HEAD) & 0xF;
+        int maskVersion = HideArmorState.getMaskVersion();
+        Packet variant = entry.variant(pattern, maskVersion);
+        if (variant == null) {
+            variant = buildVariant(entry, mask);
+            entry.setVariant(pattern, maskVersion, variant);
+        }
+        // The decoded packet itself marks "unchanged" (storing the cached packet would
+        // pin the weak cache key through its own value)
+        return variant == entry.packet ? cached : variant;
+    }
 
-                    if (!shouldHideAny)
-                        continue;
+    /**
+     * Builds the shared variant of a broadcast for a hide-others pattern.
+     *
+     * @param entry the decoded packet and its variants
+     * @param mask  the mask of the first viewer with this pattern
+     * @return the re-serialized filtered packet, or {@code entry.packet} if
+     *         nothing changes
+     */
+    private Packet buildVariant(UnwrappedEntityUpdates entry, int mask) {
+        EntityUpdates modified = EquipmentFilter.filterIndexed(entry, mask, selfNetworkId);
+        if (modified == entry.packet)
+            return modified;
+
+        try {
+            return CachedPacket.cache(modified);
+        } catch (Exception e) {
+            PluginLogger.error("Failed to re-serialize filtered EntityUpdates", e);
+            return modified;
+        }
+    }
 
-                    // Lazy copying: Only clone the array when we actually need to modify it
-                    if (!modified) {
-                        updatesCopy = eu.updates.clone(); // Shallow copy of the updates array
-                        modified = true;
-                    }
+    /**
+     * Filters equipment components of an {@code EntityUpdates} packet for this
+     * viewer, using the filter specialized for the viewer's current mask.
+     * <p>
+     * The filter is re-selected whenever the mask moves to a different kind
+     * (self-only, others-only, combined); the swap is a single volatile write.
+     *
+     * @param eu   the original packet
+     * @param mask the viewer's effective mask
+     * @return a filtered copy, or {@code eu} itself if nothing had to change
+     */
+    private EntityUpdates filterEntityUpdates(EntityUpdates eu, int mask) {
+        int kind = EquipmentFilter.kindOf(mask);
+        if (kind == EquipmentFilter.KIND_NONE)
+            return eu;
+
+        EquipmentFilter current = filter;
+        if (current == null || current.kind() != kind) {
+            current = EquipmentFilter.create(kind, selfNetworkId, players);
+            filter = current;
+        }
+        return current.filter(eu, mask);
+    }
 
-                    // Clone the EntityUpdate only once to avoid mutating the original
-                    if (updCopy == null) {
-                        updCopy = new EntityUpdate();
-                        updCopy.networkId = upd.networkId;
-                        updCopy.removed = upd.removed; // Preserve removal state
-                        updCopy.updates = upd.updates.clone(); // Shallow copy of component updates
-                        updatesCopy[i] = updCopy;
-                    }
+    /**
+     * Lets the world registry drop players whose entity was removed and whose
+     * network ID may now be recycled.
+     *
+     * @param eu the outgoing packet
+     */
+    private void purgeRemoved(EntityUpdates eu) {
+        int[] removed = eu.removed;
+        if (removed == null)
+            return;
+        for (int networkId : removed) {
+            players.onEntityRemoved(networkId);
+        }
+    }
 
-                    // Use helper method to create modified component with hidden armor
-                    updCopy.updates[j] = createHiddenComponentUpdate(cu, hideSlots);
+    /**
+     * Records the real equipment of player entities in a non-cached packet, and
+     * forgets the entities it removes.
+     * <p>
+     * The same walk classifies the packet for {@link #filterShared}, so it is
+     * the only pass over the packet before filtering.
+     *
+     * @param eu the outgoing packet, before filtering
+     * @return {@link #SEEN_SELF} and/or {@link #SEEN_PLAYERS}, or 0 if no player
+     *         entity carries equipment
+     */
+    private int observe(EntityUpdates eu) {
+        int seen = 0;
+        EntityUpdate[] updates = eu.updates;
+        if (updates != null) {
+            for (EntityUpdate upd : updates) {
+                Equipment equipment = upd != null ? EquipmentFilter.equipmentOf(upd) : null;
+                if (equipment == null)
+                    continue;
+                if (upd.networkId == selfNetworkId) {
+                    seen |= SEEN_SELF;
+                } else if (players.resolve(upd.networkId) != null) {
+                    seen |= SEEN_PLAYERS;
+                } else {
+                    continue; // Not a player: never filtered
                 }
+                show(upd.networkId, equipment);
             }
         }
+        if (eu.removed != null)
+            unshow(eu.removed);
+        return seen;
+    }
 
-        // If nothing was modified, return the original packet unchanged
-        if (!modified)
-            return packet;
+    /**
+     * Records the real equipment of player entities in a decoded broadcast, and
+     * forgets the entities it removes. Walks only the precomputed index when it
+     * was classified against this viewer's world.
+     *
+     * @param entry the decoded broadcast
+     */
+    private void observe(UnwrappedEntityUpdates entry) {
+        if (entry.packet == null) {
+            unshow(entry.removedNetworkIds());
+        } else if (entry.players != players) {
+            observe(entry.packet);
+        } else {
+            EntityUpdate[] updates = entry.packet.updates;
+            for (int k = 0; k < entry.indexPositions.length; k++) {
+                show(entry.indexNetworkIds[k], EquipmentFilter.equipmentOf(updates[entry.indexPositions[k]]));
+            }
+            unshow(entry.removedNetworkIds());
+        }
+    }
 
-        // Build and return the modified packet with hidden armor
-        EntityUpdates out = new EntityUpdates();
-        out.removed = eu.removed; // Preserve entity removal state
-        out.updates = updatesCopy; // Use our modified copy with hidden armor
-        return out;
+    /**
+     * Records a player entity's equipment. Repeats of what is already recorded
+     * cost one lock-free read.
+     */
+    private void show(int networkId, Equipment equipment) {
+        if (!equipment.equals(shownEquipment.get(networkId)))
+            shownEquipment.put(networkId, equipment);
+    }
+
+    /**
+     * Forgets removed entities. IDs that were never recorded (non-players) cost
+     * one lock-free read each.
+     */
+    private void unshow(int[] removed) {
+        if (removed.length == 0 || shownEquipment.size() == 0)
+            return;
+        for (int networkId : removed) {
+            if (shownEquipment.get(networkId) != null)
+                shownEquipment.remove(networkId);
+        }
     }
 
     /**
-     * Creates a modified copy of a component update with non-visible slots cleared.
+     * Drops all per-viewer tracking after a packet went through unfiltered and
+     * unobserved, so neither suppression nor resyncs rely on it.
+     */
+    private void untrack() {
+        if (!sent.isEmpty())
+            sent.clear();
+        if (shownEquipment.size() != 0) {
+            viewEpoch.incrementAndGet();
+            shownEquipment.clear();
+        }
+    }
+
+    /**
+     * Checks whether this wrapper has a record of every player spawned on the
+     * viewer's client, so a player it has not seen is simply out of range.
      * <p>
-     * Deep clones the Equipment component to handle packet-shared data safely.
+     * A wrapper is installed while the client may already have players spawned,
+     * so this only holds once {@link #rebuildView()} has completed, and until the
+     * records are dropped again.
      *
-     * @param original  The original component update
-     * @param hideSlots Boolean array where true indicates the slot should be hidden
-     * @return A new ComponentUpdate with hidden armor slots
+     * @return true if unknown players need no resync for this viewer
      */
-    private ComponentUpdate createHiddenComponentUpdate(ComponentUpdate original, boolean[] hideSlots) {
-        ComponentUpdate copy = new ComponentUpdate();
-        copy.type = original.type;
+    public boolean isViewComplete() {
+        return completeEpoch == viewEpoch.get();
+    }
 
-        Equipment originalEq = original.equipment;
-        if (originalEq == null) {
-            return copy; // Should not happen given caller checks, but safe
-        }
-        Equipment newEq = new Equipment();
-        // Preserving hand items is crucial as we only want to hide armor
-        newEq.rightHandItemId = originalEq.rightHandItemId;
-        newEq.leftHandItemId = originalEq.leftHandItemId;
-
-        if (originalEq.armorIds != null) {
-            newEq.armorIds = originalEq.armorIds.clone();
-            for (int i = 0; i < newEq.armorIds.length; i++) {
-                if (i < hideSlots.length && hideSlots[i]) {
-                    newEq.armorIds[i] = ""; // Hide slot by setting ID to empty string
-                }
-            }
+    /**
+     * Makes this wrapper's view complete by queueing a rebroadcast of every other
+     * player in the world; the view is complete once all of them have been
+     * handled. Does nothing if the view is complete or already being rebuilt.
+     * <p>
+     * This costs one paced rebroadcast per player, once per wrapper: later
+     * resyncs skip players this wrapper has not seen.
+     */
+    public void rebuildView() {
+        int epoch = viewEpoch.get();
+        if (completeEpoch == epoch || rebuildEpoch == epoch)
+            return;
+        rebuildEpoch = epoch;
+
+        AtomicInteger remaining = new AtomicInteger(1); // Held until all are queued
+        Runnable onHandled = () -> {
+            if (remaining.decrementAndGet() == 0)
+                completeEpoch = epoch; // Stale if the records were wiped meanwhile
+        };
+        players.forEachPlayer(player -> {
+            if (player.getNetworkId() == selfNetworkId)
+                return;
+            remaining.incrementAndGet();
+            EquipmentInvalidationQueue.request(player, onHandled);
+        });
+        onHandled.run();
+    }
+
+    /**
+     * Queues a rebroadcast of the players whose armor may have reached the viewer
+     * unfiltered while the breaker was open. If the records were kept, those are
+     * the players this wrapper has seen; otherwise the view is rebuilt.
+     */
+    private void refreshAfterDegraded() {
+        if (!isViewComplete()) {
+            rebuildView();
+            return;
         }
+        if (shownEquipment.size() == 0)
+            return;
+        players.forEachPlayer(player -> {
+            int networkId = player.getNetworkId();
+            if (networkId != selfNetworkId && shownEquipment.get(networkId) != null)
+                EquipmentInvalidationQueue.request(player);
+        });
+    }
 
-        copy.equipment = newEq;
-        return copy;
+    /**
+     * Re-sends the viewer's own equipment to them, filtered for their current
+     * self-armor settings.
+     *
+     * @return false if this wrapper has not seen the viewer's equipment, in which
+     *         case the caller should fall back to invalidating the viewer
+     */
+    public boolean resyncSelf() {
+        return resync(new int[] { selfNetworkId }).length == 0;
     }
 
     /**
-     * Resolve a networkId to a player UUID.
-     * Uses caching to avoid repeated entity store queries.
+     * Re-sends the equipment of the given players to this viewer, filtered for
+     * the viewer's current settings.
+     * <p>
+     * Only equipment that passed through this wrapper is used: that is exactly
+     * what the viewer's client last received for those entities, whatever
+     * happened elsewhere in the world. One {@code EntityUpdates} is written
+     * through this receiver, so the normal filter applies and entities whose
+     * filtered equipment did not change are dropped. Nothing is broadcast to
+     * other players. Must run on the world thread.
      *
-     * @param networkId The network ID to resolve
-     * @return Player UUID if found, null otherwise
-     */
-    private UUID resolveEntityUuid(int networkId) {
-        // Check cache first
-        UUID cached = networkIdCache.get(networkId);
-        if (cached != null) {
-            return cached.equals(NULL_UUID) ? null : cached;
-        }
+     * @param networkIds the player network IDs
+     * @return the IDs this wrapper has no equipment for; unless
+     *         {@link #isViewComplete()}, some of them may be spawned on the
+     *         client from before the wrapper was installed
+     */
+    public int[] resyncTargets(int[] networkIds) {
+        return resync(networkIds);
+    }
 
-        // Optimized lookup avoiding reflection
-        if (world instanceof World) {
-            World w = (World) world;
-            for (Player player : w.getPlayers()) {
-                if (player != null && player.getNetworkId() == networkId) {
-                    @SuppressWarnings("deprecation")
-                    UUID uuid = player.getUuid();
-                    networkIdCache.put(networkId, uuid); // Positive cache
-                    return uuid;
-                }
+    /**
+     * Writes the recorded real equipment of the given entities through this
+     * receiver.
+     *
+     * @param networkIds the player network IDs
+     * @return the IDs without recorded equipment (the rest are still sent)
+     */
+    private int[] resync(int[] networkIds) {
+        EntityUpdate[] updates = new EntityUpdate[networkIds.length];
+        int[] unknown = new int[networkIds.length];
+        int count = 0;
+        int unknownCount = 0;
+        for (int networkId : networkIds) {
+            Equipment equipment = shownEquipment.get(networkId);
+            if (equipment == null) {
+                unknown[unknownCount++] = networkId;
+                continue;
             }
+            ComponentUpdate cu = new ComponentUpdate();
+            cu.type = ComponentUpdateType.Equipment;
+            cu.equipment = equipment;
+            EntityUpdate upd = new EntityUpdate();
+            upd.networkId = networkId;
+            upd.updates = new ComponentUpdate[] { cu };
+            updates[count++] = upd;
         }
 
-        // Cache failure (negative result) to prevent repeated lookups for non-player
-        // entities
-        networkIdCache.put(networkId, NULL_UUID);
-        return null;
+        if (count > 0) {
+            EntityUpdates packet = new EntityUpdates();
+            packet.updates = count == updates.length ? updates : Arrays.copyOf(updates, count);
+            write(packet);
+        }
+        return Arrays.copyOf(unknown, unknownCount);
     }
 }
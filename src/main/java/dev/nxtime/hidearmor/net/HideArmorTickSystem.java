@@ -0,0 +1,41 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.component.system.tick.TickingSystem;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Entity store system that runs the plugin's per-tick work on each world
+ * thread.
+ * <p>
+ * Registered once for all worlds; each tick it looks up the world's
+ * {@link PlayerNetworkRegistry}, advances its {@link RefreshTimerWheel}, then
+ * flushes its {@link EquipmentInvalidationQueue}, so refreshes that fall due
+ * are sent in the same tick. It also evicts the world's delivered broadcasts from the
+ * shared {@link BroadcastCache}. Tick-aligned work runs here rather than in
+ * {@code world.execute} tasks, so it costs nothing when nothing is pending.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see RefreshTimerWheel
+ * @see EquipmentInvalidationQueue
+ */
+public final class HideArmorTickSystem extends TickingSystem<EntityStore> {
+
+    @Override
+    public void tick(float dt, int systemIndex, @Nonnull Store<EntityStore> store) {
+        World world = store.getExternalData().getWorld();
+        if (world == null)
+            return;
+        PlayerNetworkRegistry players = PlayerNetworkRegistry.find(world);
+        if (players == null)
+            return; // No player has joined this world yet
+
+        players.refreshTimers.tick(world);
+        players.invalidations.tick(world);
+        HideArmorPacketReceiver.onWorldTick(players);
+    }
+}
@@ -0,0 +1,130 @@
+package dev.nxtime.hidearmor.net;
+
+import dev.nxtime.hidearmor.HideArmorState;
+import dev.nxtime.hidearmor.util.PluginLogger;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-viewer circuit breaker on packet filter latency.
+ * <p>
+ * Filtering runs inline on every write, so a slow path (a burst of decode
+ * failures, an oversized packet) would delay packet delivery to the viewer.
+ * The receiver reports how long each filtered packet took. Once the average
+ * over {@value #WINDOW_PACKETS} packets exceeds
+ * {@link HideArmorState#getFilterBudgetMicros()}, the breaker opens for
+ * {@link #COOLDOWN_NANOS}: the receiver then only hides the viewer's own armor,
+ * which needs no registry lookups. After the cooldown, full filtering resumes
+ * automatically; if it is still too slow, the breaker opens again.
+ * <p>
+ * Each trip is logged once. Showing other players' armor for the cooldown is
+ * preferred over stalling the viewer's connection. Equipment that reached the
+ * client unfiltered meanwhile stays visible until it is re-sent, so the
+ * receiver polls {@link #pollClosed()} and refreshes the viewer once the
+ * breaker has closed.
+ * <p>
+ * <b>Thread-safety:</b> A receiver is normally written by one thread. Racing
+ * writers may lose a sample from the window, which only delays a trip.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+final class LatencyBreaker {
+
+    /** Number of filtered packets averaged per window. */
+    private static final int WINDOW_PACKETS = 64;
+
+    /** How long the breaker stays open before retrying full filtering. */
+    private static final long COOLDOWN_NANOS = 5_000_000_000L;
+
+    /** Number of trips across all viewers. */
+    private static final LongAdder TRIPS = new LongAdder();
+
+    /** The viewer, for logging. */
+    private final UUID viewerUuid;
+
+    /** Filter time accumulated in the current window. */
+    private long windowNanos;
+
+    /** Packets counted in the current window. */
+    private int windowCount;
+
+    /** {@code System.nanoTime()} at which the breaker closes again; 0 if closed. */
+    private volatile long openUntil;
+
+    /** Set when the breaker closes, until {@link #pollClosed()} reports it. */
+    private volatile boolean closed;
+
+    /**
+     * @param viewerUuid the viewer, for logging
+     */
+    LatencyBreaker(UUID viewerUuid) {
+        this.viewerUuid = viewerUuid;
+    }
+
+    /**
+     * @return the number of trips across all viewers
+     */
+    static long getTripCount() {
+        return TRIPS.sum();
+    }
+
+    /**
+     * Checks whether the receiver should run in degraded (self-only) mode.
+     * Closes the breaker once the cooldown has elapsed.
+     *
+     * @return true while the breaker is open
+     */
+    boolean isOpen() {
+        long until = openUntil;
+        if (until == 0)
+            return false;
+        if (System.nanoTime() - until < 0)
+            return true;
+        openUntil = 0;
+        closed = true;
+        PluginLogger.debug("Packet filter for %s back to full mode", viewerUuid);
+        return false;
+    }
+
+    /**
+     * Reports, once, that the breaker has closed since the last call, so the
+     * receiver can correct what the viewer was sent in degraded mode. Costs one
+     * volatile read when nothing changed.
+     *
+     * @return true if the breaker closed since the last call
+     */
+    boolean pollClosed() {
+        if (!closed)
+            return false;
+        closed = false;
+        return true;
+    }
+
+    /**
+     * Records the time one filtered packet took.
+     *
+     * @param nanos the elapsed filter time
+     */
+    void record(long nanos) {
+        long budgetNanos = HideArmorState.getFilterBudgetMicros() * 1000L;
+        if (budgetNanos <= 0)
+            return; // Breaker disabled
+
+        windowNanos += nanos;
+        if (++windowCount < WINDOW_PACKETS)
+            return;
+
+        long average = windowNanos / windowCount;
+        windowNanos = 0;
+        windowCount = 0;
+        if (average > budgetNanos && openUntil == 0) {
+            openUntil = System.nanoTime() + COOLDOWN_NANOS;
+            TRIPS.increment();
+            PluginLogger.warn("Packet filter for %s averaged %d us (budget %d us); hiding only own armor for %d s",
+                    viewerUuid, average / 1000, budgetNanos / 1000, COOLDOWN_NANOS / 1_000_000_000L);
+        }
+    }
+}
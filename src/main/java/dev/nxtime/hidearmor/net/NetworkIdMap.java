@@ -0,0 +1,230 @@
+package dev.nxtime.hidearmor.net;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Primitive {@code int} network ID to object map.
+ * <p>
+ * Open-addressing table with linear probing, so lookups neither box the network
+ * ID nor chase map-entry nodes.
+ * <p>
+ * <b>Thread-safety:</b> Reads use an optimistic {@link StampedLock} stamp and
+ * only fall back to a read lock if a write raced with them. Writes take the
+ * write lock.
+ *
+ * @param <V> the value type
+ * @author nxtime
+ * @version 0.8.0
+ * @see PlayerNetworkRegistry
+ */
+final class NetworkIdMap<V> {
+
+    /** Maximum fill ratio before the table doubles. */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final StampedLock lock = new StampedLock();
+
+    /** Current table; replaced as a whole on resize. */
+    private volatile Table table;
+
+    /** Number of occupied slots. Guarded by the write lock. */
+    private int size;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param expectedSize the number of entries to size the table for
+     */
+    NetworkIdMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, (int) (expectedSize / LOAD_FACTOR) - 1)) << 1;
+        this.table = new Table(capacity);
+    }
+
+    /**
+     * Looks up the value for a network ID.
+     *
+     * @param networkId the entity network ID
+     * @return the value, or null if absent
+     */
+    V get(int networkId) {
+        long stamp = lock.tryOptimisticRead();
+        V value = table.find(networkId);
+        if (lock.validate(stamp))
+            return value;
+
+        stamp = lock.readLock();
+        try {
+            return table.find(networkId);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Associates a value with a network ID.
+     *
+     * @param networkId the entity network ID
+     * @param value     the value (must not be null)
+     */
+    void put(int networkId, V value) {
+        long stamp = lock.writeLock();
+        try {
+            if (table.insert(networkId, value)) {
+                size++;
+                if (size > table.keys.length * LOAD_FACTOR) {
+                    table = table.resized(table.keys.length << 1);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the value for a network ID, if present.
+     *
+     * @param networkId the entity network ID
+     * @return the removed value, or null if absent
+     */
+    V remove(int networkId) {
+        long stamp = lock.writeLock();
+        try {
+            V removed = table.delete(networkId);
+            if (removed != null)
+                size--;
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the value for a network ID only if it is currently mapped to a value
+     * equal to the given one.
+     *
+     * @param networkId the entity network ID
+     * @param expected  the value the ID must map to
+     * @return true if the entry was removed
+     */
+    boolean remove(int networkId, V expected) {
+        long stamp = lock.writeLock();
+        try {
+            if (!expected.equals(table.find(networkId)))
+                return false;
+            table.delete(networkId);
+            size--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of entries. Not synchronized with concurrent writes, so
+     * the value may be momentarily stale.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries, keeping the current capacity.
+     */
+    void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(table.keys.length);
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Open-addressing slot arrays. A slot is empty when its value is null.
+     */
+    private static final class Table {
+        final int[] keys;
+        final Object[] values;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        <V> V find(int key) {
+            for (int i = slot(key);; i = (i + 1) & mask) {
+                Object value = values[i];
+                if (value == null)
+                    return null;
+                if (keys[i] == key)
+                    return (V) value;
+            }
+        }
+
+        /** @return true if a new slot was occupied, false if an entry was replaced */
+        boolean insert(int key, Object value) {
+            for (int i = slot(key);; i = (i + 1) & mask) {
+                if (values[i] == null) {
+                    keys[i] = key;
+                    values[i] = value;
+                    return true;
+                }
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Removes a key using backward-shift deletion, so probe chains stay intact
+         * without tombstones.
+         */
+        @SuppressWarnings("unchecked")
+        <V> V delete(int key) {
+            int i = slot(key);
+            while (true) {
+                if (values[i] == null)
+                    return null;
+                if (keys[i] == key)
+                    break;
+                i = (i + 1) & mask;
+            }
+
+            V removed = (V) values[i];
+            int hole = i;
+            for (int j = (hole + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                // Move j into the hole unless its home lies cyclically in (hole, j]
+                boolean stays = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+                if (!stays) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            values[hole] = null;
+            return removed;
+        }
+
+        Table resized(int capacity) {
+            Table next = new Table(capacity);
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null)
+                    next.insert(keys[i], values[i]);
+            }
+            return next;
+        }
+
+        int slot(int key) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
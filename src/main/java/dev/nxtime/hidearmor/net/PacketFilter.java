@@ -0,0 +1,37 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.protocol.Packet;
+
+/**
+ * Filter for one outgoing packet type.
+ * <p>
+ * Filters are registered by packet ID with
+ * {@link HideArmorPacketReceiver#registerFilter}. A receiver looks up the
+ * filter for each packet with a bounds check and a single array load; packets
+ * without a filter (including IDs beyond the highest registered one) pass
+ * through before the viewer's mask is even read. Both plain packets and
+ * {@code CachedPacket} broadcasts of that ID are dispatched to the same filter.
+ * <p>
+ * Filters run on the thread writing the packet and must be thread-safe.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+@FunctionalInterface
+public interface PacketFilter {
+
+    /**
+     * Filters a packet for one viewer.
+     * <p>
+     * Only called if the viewer hides something (see
+     * {@link HideArmorPacketReceiver#isRequiredFor}).
+     *
+     * @param receiver the viewer's receiver
+     * @param packet   the outgoing packet (plain or {@code CachedPacket})
+     * @param mask     the viewer's effective 12-bit mask
+     * @return the packet to send ({@code packet} itself if unchanged), or null to
+     *         send nothing
+     */
+    Packet filter(HideArmorPacketReceiver receiver, Packet packet, int mask);
+}
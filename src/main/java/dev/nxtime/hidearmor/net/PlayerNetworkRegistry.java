@@ -0,0 +1,283 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.universe.world.World;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Per-world registry mapping entity network IDs to player UUIDs.
+ * <p>
+ * One registry exists per world and is shared by every
+ * {@link HideArmorPacketReceiver} in it, so memory grows with the number of
+ * players rather than players squared. It is also the holder of the world's
+ * other per-world state: its {@link RefreshTimerWheel} and
+ * {@link EquipmentInvalidationQueue}, so the world tick needs one lookup. It is maintained from join and leave
+ * events instead of being filled lazily:
+ * <ul>
+ * <li>{@link #register} when a player becomes ready in a world (which also
+ * removes them from the world they came from)</li>
+ * <li>{@link #unregisterEverywhere} when a player disconnects</li>
+ * <li>{@link #onEntityRemoved} when an entity is removed from a viewer's
+ * {@code EntityUpdates}; the entry is purged if that player no longer owns the
+ * network ID in this world, so a recycled ID is never attributed to them</li>
+ * </ul>
+ * A lookup miss therefore means "not a player" and is answered in O(1) without
+ * scanning {@code World.getPlayers()}. The registry is bounded by these
+ * removal events rather than by a size cap: it holds at most the players who
+ * joined the world and have not left it since.
+ * <p>
+ * Registrations hold their {@code Player} weakly. A player references their
+ * world, and registries are values of a weak map keyed by the world, so a
+ * strong reference would keep unloaded worlds alive.
+ * <p>
+ * <b>Thread-safety:</b> Lookups are lock-free (see {@link NetworkIdMap}); join
+ * and leave bookkeeping uses {@link ConcurrentHashMap}. Receivers hold their
+ * registry directly. The per-world index is consulted on join and once per
+ * world tick, and is a lock-free scan of a copy-on-write array; only creating
+ * a world's registry takes a lock.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+public final class PlayerNetworkRegistry {
+
+    /**
+     * Registry per world. Copy-on-write snapshot, so lookups scan the few loaded
+     * worlds without a lock; each registry holds its world weakly, and
+     * registries of unloaded worlds are dropped when the next one is created.
+     */
+    private static volatile PlayerNetworkRegistry[] registries = new PlayerNetworkRegistry[0];
+
+    /** The registry each online player is currently registered in. */
+    private static final Map<UUID, PlayerNetworkRegistry> BY_PLAYER = new ConcurrentHashMap<>();
+
+    /** The world this registry belongs to (weak, as it is also the index key). */
+    private final WeakReference<World> world;
+
+    /** Network ID to registration. */
+    private final NetworkIdMap<Entry> players = new NetworkIdMap<>(64);
+
+    /** Player UUID to registration, for removal on leave. */
+    private final Map<UUID, Entry> byUuid = new ConcurrentHashMap<>();
+
+    /** Delayed equipment refreshes of this world. */
+    final RefreshTimerWheel refreshTimers = new RefreshTimerWheel();
+
+    /** Pending equipment rebroadcasts of this world. */
+    final EquipmentInvalidationQueue invalidations = new EquipmentInvalidationQueue();
+
+    /**
+     * Live {@link BroadcastCache} entries owned by this world, so its tick can
+     * skip the eviction scan when there are none.
+     */
+    final AtomicInteger cachedBroadcasts = new AtomicInteger();
+
+    /**
+     * Creates an empty registry for a world.
+     *
+     * @param world the world
+     */
+    private PlayerNetworkRegistry(World world) {
+        this.world = new WeakReference<>(world);
+    }
+
+    /**
+     * Returns the registry for a world, creating it on first use.
+     *
+     * @param world the world
+     * @return the shared registry for that world
+     */
+    public static PlayerNetworkRegistry forWorld(World world) {
+        PlayerNetworkRegistry registry = find(world);
+        return registry != null ? registry : create(world);
+    }
+
+    /**
+     * Returns the registry for a world if one exists.
+     *
+     * @param world the world
+     * @return the registry, or null if no player has joined that world yet
+     */
+    static PlayerNetworkRegistry find(World world) {
+        for (PlayerNetworkRegistry registry : registries) {
+            if (registry.world.get() == world)
+                return registry;
+        }
+        return null;
+    }
+
+    /**
+     * Creates and publishes the registry for a world unless another thread did
+     * first.
+     */
+    private static synchronized PlayerNetworkRegistry create(World world) {
+        PlayerNetworkRegistry existing = find(world);
+        if (existing != null)
+            return existing;
+
+        PlayerNetworkRegistry created = new PlayerNetworkRegistry(world);
+        List<PlayerNetworkRegistry> next = new ArrayList<>(registries.length + 1);
+        for (PlayerNetworkRegistry registry : registries) {
+            if (registry.world.get() != null)
+                next.add(registry); // Drop unloaded worlds
+        }
+        next.add(created);
+        registries = next.toArray(new PlayerNetworkRegistry[0]);
+        return created;
+    }
+
+    /**
+     * Removes a player from whichever world registry currently holds them.
+     * <p>
+     * Called when a player disconnects.
+     *
+     * @param uuid the player's UUID
+     */
+    public static void unregisterEverywhere(UUID uuid) {
+        PlayerNetworkRegistry registry = BY_PLAYER.remove(uuid);
+        if (registry != null)
+            registry.remove(uuid);
+    }
+
+    /**
+     * Finds an online player by UUID.
+     *
+     * @param uuid the player's UUID
+     * @return the player, or null if not registered in any world
+     */
+    public static Player findPlayer(UUID uuid) {
+        PlayerNetworkRegistry registry = BY_PLAYER.get(uuid);
+        if (registry == null)
+            return null;
+        Entry entry = registry.byUuid.get(uuid);
+        return entry != null ? entry.player() : null;
+    }
+
+    /**
+     * Registers a player that became ready in this registry's world.
+     * <p>
+     * If the player was registered in another world (transfer), that entry is
+     * removed first.
+     *
+     * @param player the player
+     */
+    public void register(Player player) {
+        @SuppressWarnings("deprecation")
+        UUID uuid = player.getUuid();
+        int networkId = player.getNetworkId();
+
+        PlayerNetworkRegistry previous = BY_PLAYER.put(uuid, this);
+        if (previous != null && previous != this)
+            previous.remove(uuid);
+
+        Entry entry = new Entry(uuid, networkId, player);
+        Entry old = byUuid.put(uuid, entry);
+        if (old != null)
+            players.remove(old.networkId, old);
+        players.put(networkId, entry);
+    }
+
+    /**
+     * Resolves a network ID to a player UUID.
+     *
+     * @param networkId the entity network ID
+     * @return the player's UUID, or null if the entity is not a player
+     */
+    UUID resolve(int networkId) {
+        Entry entry = players.get(networkId);
+        return entry != null ? entry.uuid : null;
+    }
+
+    /**
+     * Runs an action for every player registered in this world.
+     *
+     * @param action the action
+     */
+    public void forEachPlayer(Consumer<Player> action) {
+        for (Entry entry : byUuid.values()) {
+            Player player = entry.player();
+            if (player != null)
+                action.accept(player);
+        }
+    }
+
+    /**
+     * Handles an entity removal seen in an outgoing {@code EntityUpdates}.
+     * <p>
+     * A removal also happens when a player merely leaves a viewer's range, so the
+     * entry is only purged if the player no longer owns this network ID in this
+     * world (despawned, transferred, or the ID was recycled).
+     *
+     * @param networkId the removed entity's network ID
+     */
+    void onEntityRemoved(int networkId) {
+        Entry entry = players.get(networkId);
+        if (entry != null && entry.isStale(world.get())) {
+            players.remove(networkId, entry);
+            byUuid.remove(entry.uuid, entry);
+            BY_PLAYER.remove(entry.uuid, this);
+        }
+    }
+
+    /**
+     * Removes a player from this registry, with their pending refresh timer and
+     * queued rebroadcast.
+     *
+     * @param uuid the player's UUID
+     */
+    private void remove(UUID uuid) {
+        Entry entry = byUuid.remove(uuid);
+        if (entry != null)
+            players.remove(entry.networkId, entry); // The ID may already belong to someone else
+        refreshTimers.remove(uuid);
+        invalidations.remove(uuid);
+    }
+
+    /**
+     * A player registration: who owns a network ID, and where.
+     */
+    private static final class Entry {
+        final UUID uuid;
+        final int networkId;
+
+        /** Weak, so the registration never keeps the player's world alive. */
+        final WeakReference<Player> player;
+
+        Entry(UUID uuid, int networkId, Player player) {
+            this.uuid = uuid;
+            this.networkId = networkId;
+            this.player = new WeakReference<>(player);
+        }
+
+        /**
+         * @return the player, or null if the entity has been collected
+         */
+        Player player() {
+            return player.get();
+        }
+
+        /**
+         * @param world the registry's world
+         * @return true if the player no longer owns this network ID in that world
+         */
+        boolean isStale(World world) {
+            Player current = player.get();
+            if (current == null)
+                return true; // Entity is gone
+            try {
+                return current.getWorld() != world || current.getNetworkId() != networkId;
+            } catch (Throwable t) {
+                return true; // Entity is gone
+            }
+        }
+    }
+}
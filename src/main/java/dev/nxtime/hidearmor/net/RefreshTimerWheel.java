@@ -0,0 +1,223 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.universe.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-world hashed timer wheel for delayed equipment refreshes.
+ * <p>
+ * Inventory changes re-request a player's equipment a short delay after the
+ * event, so the corrected packet arrives after the server's own. The wheel has
+ * {@value #SLOTS} slots and is advanced by {@link HideArmorTickSystem} once per
+ * world tick; a refresh due in {@code n} ticks is linked into slot
+ * {@code (now + n) mod SLOTS}, with a round count for delays longer than the
+ * wheel. When it fires, the player is handed to
+ * {@link EquipmentInvalidationQueue}.
+ * <p>
+ * One wheel exists per world, owned by that world's
+ * {@link PlayerNetworkRegistry}. Each player has one timer node per world,
+ * allocated on their first refresh and reused afterwards, so arming is a map
+ * lookup plus a list link. While a refresh is armed, further requests are
+ * absorbed by it. Nodes are dropped when the player leaves the registry
+ * (disconnect or transfer) and when they fire for a player who has left the
+ * world.
+ * <p>
+ * <b>Thread-safety:</b> Each wheel is guarded by its own monitor, held only to
+ * link, unlink or advance. Ticks return after one atomic read when nothing is
+ * armed anywhere.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorTickSystem
+ */
+public final class RefreshTimerWheel {
+
+    /** Number of slots; a power of two. */
+    private static final int SLOTS = 64;
+
+    /** Duration of one world tick. */
+    private static final int MS_PER_TICK = 50;
+
+    /** Timers armed across all worlds. */
+    private static final AtomicInteger ARMED = new AtomicInteger();
+
+    /** Head node of each slot's list. Guarded by {@code this}. */
+    private final Node[] slots = new Node[SLOTS];
+
+    /** Player UUID to their timer node. Guarded by {@code this}. */
+    private final Map<UUID, Node> nodes = new HashMap<>();
+
+    /** Players fired by the current advance; reused across ticks. */
+    private final ArrayList<Player> firing = new ArrayList<>();
+
+    /** Ticks advanced so far. Guarded by {@code this}. */
+    private long now;
+
+    /**
+     * Creates an empty wheel for a world's registry.
+     */
+    RefreshTimerWheel() {
+    }
+
+    /**
+     * Schedules an equipment refresh for a player in their current world, unless
+     * one is already pending.
+     *
+     * @param player  the player
+     * @param delayMs the delay in milliseconds (rounded up to whole ticks, at
+     *                least one)
+     */
+    public static void schedule(Player player, int delayMs) {
+        World world;
+        try {
+            world = player.getWorld();
+        } catch (Throwable ignored) {
+            return; // Player might have disconnected
+        }
+        if (world == null)
+            return;
+
+        int ticks = Math.max(1, (delayMs + MS_PER_TICK - 1) / MS_PER_TICK);
+        PlayerNetworkRegistry.forWorld(world).refreshTimers.arm(player, ticks);
+    }
+
+    /**
+     * Advances this wheel by one tick and requests the refreshes that are due.
+     * Must run on the world thread, once per tick.
+     *
+     * @param world the ticking world
+     */
+    void tick(World world) {
+        if (ARMED.get() == 0)
+            return;
+        advance(world);
+    }
+
+    /**
+     * Arms a player's timer unless already armed.
+     */
+    private synchronized void arm(Player player, int ticks) {
+        Node node = nodes.get(player.getUuid());
+        if (node == null) {
+            node = new Node();
+            nodes.put(player.getUuid(), node);
+        } else if (node.armed) {
+            return; // The pending refresh covers this request
+        }
+
+        node.player = player;
+        node.rounds = (ticks - 1) / SLOTS;
+        node.slot = (int) ((now + ticks) & (SLOTS - 1));
+        node.armed = true;
+        link(node);
+        ARMED.incrementAndGet();
+    }
+
+    /**
+     * Removes a player's node, disarming it first.
+     *
+     * @param uuid the player's UUID
+     */
+    synchronized void remove(UUID uuid) {
+        Node node = nodes.remove(uuid);
+        if (node != null && node.armed) {
+            unlink(node);
+            node.armed = false;
+            ARMED.decrementAndGet();
+        }
+    }
+
+    /**
+     * Moves to the next slot and fires its due nodes.
+     */
+    private void advance(World world) {
+        synchronized (this) {
+            now++;
+            Node node = slots[(int) (now & (SLOTS - 1))];
+            while (node != null) {
+                Node next = node.next;
+                if (node.rounds > 0) {
+                    node.rounds--;
+                } else {
+                    unlink(node);
+                    node.armed = false;
+                    ARMED.decrementAndGet();
+                    firing.add(node.player);
+                }
+                node = next;
+            }
+        }
+        if (firing.isEmpty())
+            return;
+
+        for (Player player : firing) {
+            World current;
+            try {
+                current = player.getWorld();
+            } catch (Throwable ignored) {
+                current = null; // Player might have disconnected
+            }
+            if (current == world) {
+                EquipmentInvalidationQueue.request(player);
+            } else {
+                dropIfIdle(player);
+            }
+        }
+        firing.clear();
+    }
+
+    /**
+     * Drops the node of a player who has left this world, unless re-armed
+     * meanwhile.
+     */
+    private synchronized void dropIfIdle(Player player) {
+        Node node = nodes.get(player.getUuid());
+        if (node != null && !node.armed)
+            nodes.remove(player.getUuid());
+    }
+
+    /**
+     * Links a node at the head of its slot.
+     */
+    private void link(Node node) {
+        Node head = slots[node.slot];
+        node.prev = null;
+        node.next = head;
+        if (head != null)
+            head.prev = node;
+        slots[node.slot] = node;
+    }
+
+    /**
+     * Unlinks a node from its slot.
+     */
+    private void unlink(Node node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            slots[node.slot] = node.next;
+        }
+        if (node.next != null)
+            node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * A player's reusable timer. Guarded by the owning wheel.
+     */
+    private static final class Node {
+        Player player;
+        Node prev;
+        Node next;
+        int slot;
+        int rounds;
+        boolean armed;
+    }
+}
@@ -0,0 +1,186 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.protocol.ComponentUpdate;
+import com.hypixel.hytale.protocol.ComponentUpdateType;
+import com.hypixel.hytale.protocol.EntityUpdate;
+import com.hypixel.hytale.protocol.Equipment;
+import com.hypixel.hytale.protocol.packets.entities.EntityUpdates;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-viewer record of the last equipment state sent for each entity.
+ * <p>
+ * After filtering, many equipment updates are identical to what the viewer
+ * already has (the hidden slots were already blank, or an inventory refresh
+ * re-sent unchanged gear). {@link #suppressUnchanged} drops such components,
+ * then drops entity updates left empty, and finally reports a packet with
+ * nothing left so the caller can skip the write.
+ * <p>
+ * The record only stays accurate for what this viewer actually received:
+ * <ul>
+ * <li>Entities removed from the viewer's view are forgotten, so a re-spawn
+ * always carries its equipment.</li>
+ * <li>Entities whose equipment arrived through a shared broadcast are
+ * forgotten via {@link #forget(int[])} rather than tracked.</li>
+ * <li>Above {@link #MAX_ENTRIES} the record is cleared, which only costs a
+ * resend.</li>
+ * <li>The viewer's own entity is never tracked or suppressed. Inventory
+ * updates on the viewer's client overwrite its visual armor state without the
+ * server seeing it, and the delayed inventory-change refresh re-sends the same
+ * filtered equipment precisely to correct that.</li>
+ * </ul>
+ * <p>
+ * <b>Thread-safety:</b> Methods are synchronized; a receiver is normally
+ * written by one thread, so the lock is uncontended.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+final class SentEquipmentState {
+
+    /** Maximum number of tracked entities per viewer. */
+    private static final int MAX_ENTRIES = 1024;
+
+    /** Equipment components dropped as redundant, across all viewers. */
+    private static final LongAdder SUPPRESSED = new LongAdder();
+
+    /** Network ID to the last equipment sent for that entity. */
+    private final NetworkIdMap<Equipment> lastSent = new NetworkIdMap<>(64);
+
+    /** The network ID of the viewer's own entity, which is never suppressed. */
+    private final int selfNetworkId;
+
+    /**
+     * @param selfNetworkId the network ID of the viewer's own entity
+     */
+    SentEquipmentState(int selfNetworkId) {
+        this.selfNetworkId = selfNetworkId;
+    }
+
+    /**
+     * @return the number of redundant equipment components dropped so far
+     */
+    static long getSuppressedCount() {
+        return SUPPRESSED.sum();
+    }
+
+    /**
+     * Checks whether anything is recorded.
+     *
+     * @return true if no entity is tracked
+     */
+    boolean isEmpty() {
+        return lastSent.size() == 0;
+    }
+
+    /**
+     * Forgets everything, e.g. when packets passed through unfiltered.
+     */
+    synchronized void clear() {
+        lastSent.clear();
+    }
+
+    /**
+     * Forgets the given entities. Returns without locking when nothing is
+     * recorded, and only takes the map's write lock for IDs that are recorded.
+     *
+     * @param networkIds the entity network IDs (may be null)
+     */
+    void forget(int[] networkIds) {
+        if (networkIds == null || networkIds.length == 0 || isEmpty())
+            return;
+        synchronized (this) {
+            for (int networkId : networkIds) {
+                if (lastSent.get(networkId) != null)
+                    lastSent.remove(networkId);
+            }
+        }
+    }
+
+    /**
+     * Drops equipment components this viewer already has and records the rest.
+     *
+     * @param eu the filtered packet about to be sent
+     * @return {@code eu} if nothing was dropped, a trimmed copy, or null if
+     *         nothing is left to send
+     */
+    synchronized EntityUpdates suppressUnchanged(EntityUpdates eu) {
+        // Removed entities lose their client-side state; forget before recording
+        int[] removed = eu.removed;
+        forget(removed);
+
+        EntityUpdate[] updates = eu.updates;
+        if (updates == null)
+            return eu;
+        if (lastSent.size() > MAX_ENTRIES)
+            lastSent.clear();
+
+        EntityUpdate[] kept = null;
+        int count = 0;
+        for (int i = 0; i < updates.length; i++) {
+            EntityUpdate upd = updates[i];
+            EntityUpdate result = upd != null ? suppress(upd) : null;
+
+            // Copy lazily from the first update that changed
+            if (result != upd && kept == null) {
+                kept = new EntityUpdate[updates.length];
+                System.arraycopy(updates, 0, kept, 0, i);
+                count = i;
+            }
+            if (kept != null && result != null)
+                kept[count++] = result;
+        }
+
+        if (kept == null)
+            return eu;
+        if (count == 0 && (removed == null || removed.length == 0))
+            return null; // Nothing left to tell the client
+
+        EntityUpdates out = new EntityUpdates();
+        out.removed = removed;
+        out.updates = count == kept.length ? kept : Arrays.copyOf(kept, count);
+        return out;
+    }
+
+    /**
+     * Drops a redundant equipment component from one entity update.
+     *
+     * @param upd the entity update
+     * @return {@code upd}, a copy without the redundant component, or null if
+     *         the update is left empty
+     */
+    private EntityUpdate suppress(EntityUpdate upd) {
+        ComponentUpdate[] components = upd.updates;
+        if (components == null || upd.networkId == selfNetworkId)
+            return upd; // Own equipment always goes out (inventory-change fail-safe)
+
+        for (int j = 0; j < components.length; j++) {
+            ComponentUpdate cu = components[j];
+            if (cu == null || cu.type != ComponentUpdateType.Equipment || cu.equipment == null)
+                continue;
+
+            Equipment previous = lastSent.get(upd.networkId);
+            if (!Objects.equals(previous, cu.equipment)) {
+                lastSent.put(upd.networkId, cu.equipment);
+                return upd;
+            }
+
+            SUPPRESSED.increment();
+            if (components.length == 1 && (upd.removed == null || upd.removed.length == 0))
+                return null;
+
+            EntityUpdate copy = new EntityUpdate();
+            copy.networkId = upd.networkId;
+            copy.removed = upd.removed; // Preserve removal state
+            copy.updates = new ComponentUpdate[components.length - 1];
+            System.arraycopy(components, 0, copy.updates, 0, j);
+            System.arraycopy(components, j + 1, copy.updates, j, components.length - j - 1);
+            return copy;
+        }
+        return upd;
+    }
+}
@@ -0,0 +1,251 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.protocol.CachedPacket;
+import com.hypixel.hytale.protocol.ComponentUpdate;
+import com.hypixel.hytale.protocol.ComponentUpdateType;
+import com.hypixel.hytale.protocol.EntityUpdate;
+import com.hypixel.hytale.protocol.Equipment;
+import com.hypixel.hytale.protocol.Packet;
+import com.hypixel.hytale.protocol.packets.entities.EntityUpdates;
+import dev.nxtime.hidearmor.HideArmorState;
+import dev.nxtime.hidearmor.util.PluginLogger;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shadow mode: re-checks a sample of live filter results against a plain
+ * reference implementation.
+ * <p>
+ * One in {@link HideArmorState#getShadowSampleRate()} filtered
+ * {@code EntityUpdates} is handed, together with the result actually sent, to
+ * a background thread. There the reference filter recomputes every equipment
+ * component the simple way (one registry lookup and one mask read per entity,
+ * no caches, memos, indexes or batching) and compares armor and hand item IDs.
+ * Divergences are counted and logged with a compact dump of the entity; the
+ * sent packet is never changed.
+ * <p>
+ * The write path only pays for the sampling decision and a queue offer; that
+ * overhead is measured and reported with the reference filter's own cost. If
+ * the queue is full, samples are dropped rather than blocking the writer.
+ * <p>
+ * A target changing their settings between the live filter and the shadow
+ * check can show up as a one-off divergence; a real bug shows up repeatedly.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+public final class ShadowFilter {
+
+    /** Pending samples before new ones are dropped. */
+    private static final int QUEUE_CAPACITY = 256;
+
+    /** Minimum time between two divergence log lines. */
+    private static final long LOG_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static final LongAdder SAMPLES = new LongAdder();
+    private static final LongAdder DIVERGENCES = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder WRITE_PATH_NANOS = new LongAdder();
+    private static final LongAdder REFERENCE_NANOS = new LongAdder();
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                Thread t = new Thread(r, "HideArmor-Shadow");
+                t.setDaemon(true);
+                return t;
+            }, (r, executor) -> DROPPED.increment());
+
+    private static volatile long lastLogNanos;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ShadowFilter() {
+    }
+
+    /**
+     * Decides whether the current packet is sampled.
+     *
+     * @return true if it should be submitted
+     */
+    static boolean shouldSample() {
+        int rate = HideArmorState.getShadowSampleRate();
+        return rate > 0 && ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    /**
+     * Queues a live filter result for comparison.
+     *
+     * @param original      the packet before filtering (never mutated)
+     * @param sent          the filtered result ({@code EntityUpdates} or
+     *                      {@code CachedPacket}), or {@code original} if unchanged
+     * @param mask          the mask the live filter used
+     * @param selfNetworkId the viewer's own network ID
+     * @param players       the viewer's world registry
+     */
+    static void submit(EntityUpdates original, Packet sent, int mask, int selfNetworkId,
+            PlayerNetworkRegistry players) {
+        long start = System.nanoTime();
+        SAMPLES.increment();
+        EXECUTOR.execute(() -> compare(original, sent, mask, selfNetworkId, players));
+        WRITE_PATH_NANOS.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Stops the background thread. Later samples are dropped.
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * @return the number of sampled packets
+     */
+    public static long getSamples() {
+        return SAMPLES.sum();
+    }
+
+    /**
+     * @return the number of equipment components where the results differed
+     */
+    public static long getDivergences() {
+        return DIVERGENCES.sum();
+    }
+
+    /**
+     * @return the number of samples dropped because the queue was full
+     */
+    public static long getDropped() {
+        return DROPPED.sum();
+    }
+
+    /**
+     * @return the average time added to the write path per sample, in nanoseconds
+     */
+    public static long getAverageWritePathNanos() {
+        long samples = SAMPLES.sum();
+        return samples == 0 ? 0 : WRITE_PATH_NANOS.sum() / samples;
+    }
+
+    /**
+     * @return the average reference filter time per compared sample, in
+     *         nanoseconds
+     */
+    public static long getAverageReferenceNanos() {
+        long compared = SAMPLES.sum() - DROPPED.sum();
+        return compared <= 0 ? 0 : REFERENCE_NANOS.sum() / compared;
+    }
+
+    /**
+     * Compares one sample on the background thread.
+     */
+    private static void compare(EntityUpdates original, Packet sent, int mask, int selfNetworkId,
+            PlayerNetworkRegistry players) {
+        long start = System.nanoTime();
+        try {
+            EntityUpdates actual = sent instanceof CachedPacket<?> cached ? decode(cached) : (EntityUpdates) sent;
+            EntityUpdate[] expectedUpdates = original.updates;
+            if (actual == null || expectedUpdates == null)
+                return;
+
+            EntityUpdate[] actualUpdates = actual.updates;
+            if (actualUpdates == null || actualUpdates.length != expectedUpdates.length) {
+                diverge(mask, -1, "update count " + expectedUpdates.length, "update count "
+                        + (actualUpdates == null ? 0 : actualUpdates.length));
+                return;
+            }
+
+            for (int i = 0; i < expectedUpdates.length; i++) {
+                EntityUpdate upd = expectedUpdates[i];
+                if (upd == null || upd.updates == null)
+                    continue;
+                int hideBits = referenceHideBits(upd.networkId, mask, selfNetworkId, players);
+                EntityUpdate actualUpd = actualUpdates[i];
+
+                for (int j = 0; j < upd.updates.length; j++) {
+                    ComponentUpdate cu = upd.updates[j];
+                    if (cu == null || cu.type != ComponentUpdateType.Equipment || cu.equipment == null)
+                        continue;
+
+                    Equipment expected = cu.equipment;
+                    String[] expectedArmor = referenceArmor(expected.armorIds, hideBits);
+                    ComponentUpdate actualCu = actualUpd != null && actualUpd.updates != null
+                            && j < actualUpd.updates.length ? actualUpd.updates[j] : null;
+                    Equipment got = actualCu != null ? actualCu.equipment : null;
+
+                    if (got == null || !Arrays.equals(expectedArmor, got.armorIds)
+                            || !Objects.equals(expected.rightHandItemId, got.rightHandItemId)
+                            || !Objects.equals(expected.leftHandItemId, got.leftHandItemId)) {
+                        diverge(mask, upd.networkId, Arrays.toString(expectedArmor),
+                                got != null ? Arrays.toString(got.armorIds) : "no equipment");
+                    }
+                }
+            }
+        } catch (Exception e) {
+            PluginLogger.error("Shadow filter comparison failed", e);
+        } finally {
+            REFERENCE_NANOS.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Reference hide pattern for one entity.
+     */
+    private static int referenceHideBits(int networkId, int mask, int selfNetworkId,
+            PlayerNetworkRegistry players) {
+        if (networkId == selfNetworkId)
+            return HideArmorState.selfHidePattern(mask);
+        UUID target = players.resolve(networkId);
+        return target != null ? HideArmorState.othersHidePattern(mask, HideArmorState.getMask(target)) : 0;
+    }
+
+    /**
+     * Reference armor IDs: the original with hidden slots blanked.
+     */
+    private static String[] referenceArmor(String[] armorIds, int hideBits) {
+        if (armorIds == null)
+            return null;
+        String[] out = armorIds.clone();
+        for (int slot = 0; slot < Math.min(out.length, 4); slot++) {
+            if ((hideBits & (1 << slot)) != 0)
+                out[slot] = "";
+        }
+        return out;
+    }
+
+    /**
+     * Decodes a re-serialized variant for comparison.
+     */
+    private static EntityUpdates decode(CachedPacket<?> cached) {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(cached.getCachedSize());
+        try {
+            cached.serialize(buf);
+            return EntityUpdates.deserialize(buf, 0);
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * Counts a divergence and logs it, at most once per second.
+     */
+    private static void diverge(int mask, int networkId, String expected, String actual) {
+        DIVERGENCES.increment();
+        long now = System.nanoTime();
+        if (now - lastLogNanos < LOG_INTERVAL_NANOS)
+            return;
+        lastLogNanos = now;
+        PluginLogger.warn("Shadow filter divergence (viewer mask 0x%03X, entity %d): expected %s, sent %s",
+                mask, networkId, expected, actual);
+    }
+}
@@ -0,0 +1,220 @@
+package dev.nxtime.hidearmor.net;
+
+import com.hypixel.hytale.protocol.EntityUpdate;
+import com.hypixel.hytale.protocol.Packet;
+import com.hypixel.hytale.protocol.packets.entities.EntityUpdates;
+import dev.nxtime.hidearmor.HideArmorState;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A decoded {@code EntityUpdates} broadcast together with its per-pattern
+ * filtered variants.
+ * <p>
+ * One instance exists per broadcast {@code CachedPacket}. Viewers whose own
+ * entity carries no equipment in the packet produce a result that depends only
+ * on their 4-bit hide-others pattern, so at most 16 distinct results exist. Each
+ * is stored here the first time it is built (re-serialized as a
+ * {@code CachedPacket}, or {@link #packet} itself as an "unchanged" marker) and
+ * handed to every later viewer with the same pattern. Encoding cost therefore grows
+ * with the number of patterns, not the number of viewers.
+ * <p>
+ * The first unwrap also builds an equipment index: for each player entity with
+ * an equipment component, its position in {@code packet.updates}, its network
+ * ID and its player UUID. Viewers iterate only that index (see
+ * {@link EquipmentFilter#filterIndexed}) instead of every entity and component.
+ * <p>
+ * Which entities are players is decided once, against the registry of the world
+ * the broadcast was decoded in ({@link #players}); viewers in another world do
+ * not use the index. Target settings are not snapshotted: allow-others bits are
+ * read when a viewer filters, and each variant records the
+ * {@link HideArmorState#getMaskVersion() mask version} it was built at, so a
+ * variant built before any mask change is rebuilt instead of reused.
+ * <p>
+ * <b>Thread-safety:</b> Immutable apart from the variant slots, which use
+ * {@link AtomicReferenceArray}. Two viewers racing on the same empty slot may
+ * both build a variant; either result is correct.
+ *
+ * @author nxtime
+ * @version 0.8.0
+ * @see HideArmorPacketReceiver
+ */
+final class UnwrappedEntityUpdates {
+
+    /** Number of distinct 4-bit hide-others patterns. */
+    private static final int PATTERN_COUNT = 16;
+
+    /**
+     * Shared entry for broadcasts without any equipment component (movement,
+     * stats, etc.). Holds no decoded packet, so the object graph of such
+     * broadcasts is released right after the first decode.
+     */
+    static final UnwrappedEntityUpdates NO_EQUIPMENT = new UnwrappedEntityUpdates(null, null, new int[0],
+            new int[0], new int[0], new int[0], new UUID[0]);
+
+    /** The decoded packet, or null if it carries no equipment. */
+    final EntityUpdates packet;
+
+    /** The registry the index was classified against, or null without a packet. */
+    final PlayerNetworkRegistry players;
+
+    /** Sorted network IDs of entities carrying an equipment component. */
+    private final int[] equipmentNetworkIds;
+
+    /** Network IDs of entities removed by this packet. */
+    private final int[] removedNetworkIds;
+
+    /** Equipment index: position in {@code packet.updates} per player entry. */
+    final int[] indexPositions;
+
+    /** Equipment index: network ID per player entry. */
+    final int[] indexNetworkIds;
+
+    /** Equipment index: player UUID per player entry. */
+    final UUID[] indexUuids;
+
+    /** Filtered variant per hide-others pattern, or null if not built yet. */
+    private final AtomicReferenceArray<Variant> variants = new AtomicReferenceArray<>(PATTERN_COUNT);
+
+    /**
+     * Creates an entry.
+     *
+     * @param packet              the decoded broadcast packet
+     * @param players             the registry the index was classified against
+     * @param equipmentNetworkIds sorted network IDs carrying equipment
+     * @param removedNetworkIds   network IDs removed by the packet
+     * @param indexPositions      index positions in {@code packet.updates}
+     * @param indexNetworkIds     index network IDs
+     * @param indexUuids          index player UUIDs
+     */
+    private UnwrappedEntityUpdates(EntityUpdates packet, PlayerNetworkRegistry players, int[] equipmentNetworkIds,
+            int[] removedNetworkIds, int[] indexPositions, int[] indexNetworkIds, UUID[] indexUuids) {
+        this.packet = packet;
+        this.players = players;
+        this.equipmentNetworkIds = equipmentNetworkIds;
+        this.removedNetworkIds = removedNetworkIds;
+        this.indexPositions = indexPositions;
+        this.indexNetworkIds = indexNetworkIds;
+        this.indexUuids = indexUuids;
+    }
+
+    /**
+     * Wraps a decoded packet and indexes which entities carry equipment.
+     * <p>
+     * Returns {@link #NO_EQUIPMENT} when the packet has nothing to filter and
+     * removes nothing, so later viewers of the same broadcast skip it with a
+     * single check. Removal-only packets keep just their removed IDs.
+     *
+     * @param packet  the decoded broadcast packet
+     * @param players the registry of the world the broadcast belongs to
+     * @return the entry to cache for this broadcast
+     */
+    static UnwrappedEntityUpdates of(EntityUpdates packet, PlayerNetworkRegistry players) {
+        int[] removed = packet.removed != null ? packet.removed : NO_EQUIPMENT.removedNetworkIds;
+        EntityUpdate[] updates = packet.updates;
+        int length = updates != null ? updates.length : 0;
+
+        int[] ids = new int[length];
+        int[] positions = new int[length];
+        int[] playerIds = new int[length];
+        UUID[] uuids = new UUID[length];
+        int count = 0;
+        int playerCount = 0;
+        for (int i = 0; i < length; i++) {
+            EntityUpdate upd = updates[i];
+            if (upd == null || EquipmentFilter.equipmentOf(upd) == null)
+                continue;
+            ids[count++] = upd.networkId;
+
+            UUID uuid = players.resolve(upd.networkId);
+            if (uuid == null)
+                continue; // Not a player: never filtered
+            positions[playerCount] = i;
+            playerIds[playerCount] = upd.networkId;
+            uuids[playerCount] = uuid;
+            playerCount++;
+        }
+
+        if (count == 0)
+            return removed.length == 0 ? NO_EQUIPMENT
+                    : new UnwrappedEntityUpdates(null, null, NO_EQUIPMENT.equipmentNetworkIds, removed,
+                            NO_EQUIPMENT.indexPositions, NO_EQUIPMENT.indexNetworkIds, NO_EQUIPMENT.indexUuids);
+
+        int[] sorted = Arrays.copyOf(ids, count);
+        Arrays.sort(sorted);
+        return new UnwrappedEntityUpdates(packet, players, sorted, removed, Arrays.copyOf(positions, playerCount),
+                Arrays.copyOf(playerIds, playerCount), Arrays.copyOf(uuids, playerCount));
+    }
+
+    /**
+     * Checks whether any entity in this packet carries an equipment component.
+     *
+     * @return true if the packet may need filtering
+     */
+    boolean hasEquipment() {
+        return equipmentNetworkIds.length != 0;
+    }
+
+    /**
+     * Checks whether the given entity carries an equipment component in this
+     * packet.
+     *
+     * @param networkId the entity network ID
+     * @return true if an equipment update exists for that entity
+     */
+    boolean hasEquipmentFor(int networkId) {
+        return Arrays.binarySearch(equipmentNetworkIds, networkId) >= 0;
+    }
+
+    /**
+     * Returns the network IDs of entities carrying equipment. The array is
+     * shared and must not be modified.
+     *
+     * @return the sorted network IDs (may be empty)
+     */
+    int[] equipmentNetworkIds() {
+        return equipmentNetworkIds;
+    }
+
+    /**
+     * Returns the network IDs of entities removed by this packet. The array is
+     * shared and must not be modified.
+     *
+     * @return the removed network IDs (may be empty)
+     */
+    int[] removedNetworkIds() {
+        return removedNetworkIds;
+    }
+
+    /**
+     * Returns the shared variant for a hide-others pattern.
+     *
+     * @param pattern     the viewer's 4-bit hide-others pattern
+     * @param maskVersion the current {@link HideArmorState#getMaskVersion()}
+     * @return the packet to send, or null if not built yet or built before a
+     *         mask change
+     */
+    Packet variant(int pattern, int maskVersion) {
+        Variant v = variants.get(pattern);
+        return v != null && v.maskVersion == maskVersion ? v.packet : null;
+    }
+
+    /**
+     * Stores the shared variant for a hide-others pattern.
+     *
+     * @param pattern     the viewer's 4-bit hide-others pattern
+     * @param maskVersion the mask version read before building the variant
+     * @param variant     the packet to send to viewers with this pattern
+     */
+    void setVariant(int pattern, int maskVersion, Packet variant) {
+        variants.set(pattern, new Variant(variant, maskVersion));
+    }
+
+    /**
+     * A built variant and the mask version it reflects.
+     */
+    private record Variant(Packet packet, int maskVersion) {
+    }
+}